@@ -0,0 +1,129 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats;
+
+import fr.insalyon.creatis.gasw.GaswException;
+import fr.insalyon.creatis.gasw.GaswExitCode;
+import fr.insalyon.creatis.gasw.GaswOutput;
+import fr.insalyon.creatis.gasw.bean.Job;
+import fr.insalyon.creatis.gasw.execution.GaswStatus;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.dao.hibernate.StatsJobData;
+import org.hibernate.SessionFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * End-to-end jobFinished, from the GASW output to the Stats row, with the
+ * GASW jobs in an in-memory H2 database. workflows-db is replaced by an
+ * in-memory StatsDAO, its factory not being configurable.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class JobFinishedBenchmark {
+
+    private static final int SIMULATIONS = 50;
+    private static final int FILES = 20_000;
+
+    @Param({"false", "true"})
+    public String async;
+
+    private SessionFactory sessionFactory;
+    private StatsListener listener;
+    private GaswOutput[] outputs;
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() throws GaswException {
+
+        System.setProperty(StatsConstants.LAB_ASYNC_ENABLED, async);
+        // every completion goes through the database lookup
+        System.setProperty(StatsConstants.LAB_TIMELINE_ENABLED, "false");
+        // the outputs are replayed in a loop: with dedup, every completion
+        // after the first round would be dropped before being accounted
+        System.setProperty(StatsConstants.LAB_DEDUP_ENABLED, "false");
+
+        sessionFactory = H2JobDatabase.create("jobs");
+        List<Job> jobs = new ArrayList<>();
+        outputs = new GaswOutput[FILES];
+        for (int i = 0; i < FILES; i++) {
+            String fileName = "job-" + i + ".sh";
+            String simulationID = "workflow-" + (i % SIMULATIONS);
+            long start = 1_000_000L + i * 1000L;
+            // one file in four was retried after an application error
+            if (i % 4 == 0) {
+                jobs.add(H2JobDatabase.newJob(fileName + "-0", simulationID, fileName, "app",
+                        GaswStatus.ERROR, 0, start, start + 10_000L, start + 20_000L, 0, start + 30_000L));
+            }
+            jobs.add(H2JobDatabase.newJob(fileName + "-1", simulationID, fileName, "app",
+                    GaswStatus.COMPLETED, 0, start, start + 40_000L, start + 50_000L,
+                    start + 90_000L, start + 95_000L));
+            outputs[i] = new GaswOutput(fileName + ".jdl", GaswExitCode.SUCCESS, "",
+                    null, null, null, null, null);
+        }
+        H2JobDatabase.insert(sessionFactory, jobs);
+
+        listener = new StatsListener();
+        listener.load(new InMemoryStatsDAO(), new StatsJobData(sessionFactory));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        listener.terminate();
+        sessionFactory.close();
+    }
+
+    @Benchmark
+    public void jobFinished() throws GaswException {
+        listener.jobFinished(outputs[Math.floorMod(next.getAndIncrement(), FILES)]);
+    }
+}
@@ -0,0 +1,105 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats;
+
+import fr.insalyon.creatis.gasw.execution.GaswStatus;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCategory;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCounters;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Classification and accounting of finished jobs. Each invocation goes
+ * through every GASW status combined with every exit-code family.
+ */
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ParseStatusBenchmark {
+
+    // success, undefined, then one exit code per family, positive and negative
+    private static final int[] EXIT_CODES = {0, 1, 2, 3, 4, 5, 6, 7, 9,
+        21, 33, 44, 52, 61, 205, 310, 402, 515, 620, -52, -310};
+    private static final int JOBS = GaswStatus.values().length * EXIT_CODES.length;
+
+    private JobTimeline[] jobs;
+    private StatsCounters counters;
+
+    @Setup
+    public void setup() {
+
+        jobs = new JobTimeline[JOBS];
+        int i = 0;
+        for (GaswStatus status : GaswStatus.values()) {
+            for (int exitCode : EXIT_CODES) {
+                // alternate complete and partial timelines
+                boolean partial = i % 2 == 1;
+                jobs[i++] = new JobTimeline("job-" + i, "job-" + i + ".sh", "workflow-bench",
+                        "job.sh", "site-bench", status, exitCode,
+                        1_000_000L, 1_030_000L, 1_090_000L,
+                        partial ? JobTimeline.NONE : 1_600_000L, 1_650_000L);
+            }
+        }
+        counters = new StatsCounters();
+    }
+
+    @Benchmark
+    public void classify(Blackhole blackhole) {
+
+        for (JobTimeline job : jobs) {
+            blackhole.consume(StatsCategory.classify(job.status(), job.exitCode()));
+        }
+    }
+
+    @Benchmark
+    public StatsCounters parseStatus() {
+
+        counters.clear();
+        for (JobTimeline job : jobs) {
+            counters.record(job);
+        }
+        return counters;
+    }
+}
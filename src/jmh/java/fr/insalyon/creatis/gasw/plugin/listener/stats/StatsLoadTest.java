@@ -0,0 +1,327 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats;
+
+import fr.insalyon.creatis.gasw.GaswException;
+import fr.insalyon.creatis.gasw.GaswExitCode;
+import fr.insalyon.creatis.gasw.GaswOutput;
+import fr.insalyon.creatis.gasw.bean.Job;
+import fr.insalyon.creatis.gasw.execution.GaswStatus;
+import fr.insalyon.creatis.gasw.plugin.ListenerPlugin;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.LogHistogram;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCounters;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.dao.hibernate.StatsJobData;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.monitoring.LatencyRecorder;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.bean.Stats;
+import org.hibernate.SessionFactory;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test of the stats listener with synthetic job lifecycles. The jobs
+ * of many simulations are generated with a configurable status mix, exit
+ * codes of every {@link GaswExitCode} family, retries leaving several rows
+ * per file name, resubmissions without end date and duplicated
+ * completions, and stored in an in-memory H2 GASW database. Driver threads
+ * then replay their lifecycles through the {@link ListenerPlugin}
+ * interface, as GASW would, and the resulting Stats rows are compared with
+ * the expected ones. workflows-db is replaced by an in-memory StatsDAO, its
+ * factory not being configurable.
+ *
+ * Settings are system properties: load.simulations, load.files,
+ * load.threads, load.mix (e.g. COMPLETED=70,ERROR=20,STALLED=5,CANCELLED=5),
+ * load.retries, load.missingEnd and load.duplicates (rates between 0 and
+ * 1), load.seed, and any stats.* setting of the listener.
+ */
+public class StatsLoadTest {
+
+    private final int simulations = Integer.getInteger("load.simulations", 200);
+    private final int files = Integer.getInteger("load.files", 100_000);
+    private final int threads = Integer.getInteger("load.threads", 8);
+    private final double retries = rate("load.retries", 0.2);
+    private final double missingEnd = rate("load.missingEnd", 0.05);
+    private final double duplicates = rate("load.duplicates", 0.01);
+    private final long seed = Long.getLong("load.seed", 42L);
+    private final Map<GaswStatus, Integer> mix = parseMix(
+            System.getProperty("load.mix", "COMPLETED=70,ERROR=20,STALLED=5,CANCELLED=5"));
+
+    private final List<Lifecycle> lifecycles = new ArrayList<>();
+    private final Map<String, StatsCounters> expected = new HashMap<>();
+    private final LatencyRecorder latency = new LatencyRecorder();
+    private final AtomicLong completions = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        System.exit(new StatsLoadTest().run() ? 0 : 1);
+    }
+
+    private boolean run() throws Exception {
+
+        SessionFactory sessionFactory = H2JobDatabase.create("load");
+        try {
+            System.out.printf("Generating %d files of %d simulations%n", files, simulations);
+            generate(sessionFactory);
+
+            InMemoryStatsDAO statsDAO = new InMemoryStatsDAO();
+            StatsListener listener = new StatsListener();
+            listener.load(statsDAO, new StatsJobData(sessionFactory));
+
+            long elapsed = drive(listener);
+            // flushes the buffered stats
+            listener.terminate();
+
+            report(elapsed);
+            return verify(statsDAO);
+
+        } finally {
+            sessionFactory.close();
+        }
+    }
+
+    /**
+     * Generates the jobs, stores them and computes the expected stats from
+     * the row each completion should resolve to.
+     */
+    private void generate(SessionFactory sessionFactory) {
+
+        SplittableRandom random = new SplittableRandom(seed);
+        GaswExitCode[] errorCodes = Arrays.stream(GaswExitCode.values())
+                .filter(c -> c != GaswExitCode.SUCCESS).toArray(GaswExitCode[]::new);
+        List<Job> rows = new ArrayList<>();
+
+        for (int i = 0; i < files; i++) {
+            String simulationID = "simulation-" + (i % simulations);
+            String fileName = "job-" + i + ".sh";
+            String command = "app-" + (i % 7) + ".sh";
+            GaswStatus status = pickStatus(random);
+            GaswExitCode exitCode = status == GaswStatus.COMPLETED ? GaswExitCode.SUCCESS
+                    : errorCodes[random.nextInt(errorCodes.length)];
+            long start = 1_000_000_000L + random.nextLong(86_400_000L);
+
+            // earlier attempts, some with the same exit code or still without end date
+            int attempts = random.nextDouble() < retries ? 1 + random.nextInt(3) : 0;
+            for (int attempt = 0; attempt < attempts; attempt++) {
+                boolean sameCode = random.nextBoolean();
+                long end = random.nextDouble() < missingEnd ? 0 : start + 10_000L + random.nextInt(60_000);
+                rows.add(H2JobDatabase.newJob(fileName + "-" + attempt, simulationID, fileName, command,
+                        sameCode ? status : GaswStatus.ERROR,
+                        sameCode ? exitCode.getExitCode() : errorCodes[random.nextInt(errorCodes.length)].getExitCode(),
+                        start, start + 1_000L, start + 5_000L, 0, end));
+                start += 100_000L;
+            }
+
+            long download = start + random.nextInt(600_000);
+            long running = download + random.nextInt(60_000);
+            long upload = running + random.nextInt(3_600_000);
+            long end = upload + random.nextInt(60_000);
+            // failed jobs stop in the middle of their lifecycle
+            boolean partial = status != GaswStatus.COMPLETED && random.nextBoolean();
+            Job last = H2JobDatabase.newJob(fileName + "-" + attempts, simulationID, fileName, command,
+                    status, exitCode.getExitCode(), start, download, running, partial ? 0 : upload, end);
+            rows.add(last);
+
+            expected.computeIfAbsent(simulationID, k -> new StatsCounters()).record(JobTimeline.of(last));
+            lifecycles.add(new Lifecycle(H2JobDatabase.newJob(last.getId(), simulationID, fileName,
+                    command, GaswStatus.QUEUED, 0, start, 0, 0, 0, 0), last,
+                    new GaswOutput(fileName + ".jdl", exitCode, "", null, null, null, null, null),
+                    random.nextDouble() < duplicates));
+
+            if (rows.size() >= 10_000) {
+                H2JobDatabase.insert(sessionFactory, rows);
+                rows.clear();
+            }
+        }
+        H2JobDatabase.insert(sessionFactory, rows);
+    }
+
+    /**
+     * Replays the lifecycles on the driver threads.
+     *
+     * @return the elapsed time, in nanoseconds
+     */
+    private long drive(ListenerPlugin listener) throws InterruptedException {
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger errors = new AtomicInteger();
+        List<Long> rates = new ArrayList<>();
+
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                for (int i = next.getAndIncrement(); i < lifecycles.size(); i = next.getAndIncrement()) {
+                    Lifecycle lifecycle = lifecycles.get(i);
+                    try {
+                        listener.jobSubmitted(lifecycle.submitted);
+                        listener.jobStatusChanged(lifecycle.finished);
+                        finish(listener, lifecycle.output);
+                        if (lifecycle.duplicated) {
+                            finish(listener, lifecycle.output);
+                        }
+                    } catch (GaswException ex) {
+                        errors.incrementAndGet();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        long previous = 0;
+        while (!executor.awaitTermination(1, TimeUnit.SECONDS)) {
+            long current = completions.get();
+            rates.add(current - previous);
+            previous = current;
+        }
+        long elapsed = System.nanoTime() - start;
+
+        if (!rates.isEmpty()) {
+            rates.sort(null);
+            System.out.printf("Completions/s over %d full seconds: min %d, median %d, max %d%n",
+                    rates.size(), rates.get(0), rates.get(rates.size() / 2), rates.get(rates.size() - 1));
+        }
+        if (errors.get() > 0) {
+            System.out.printf("%d lifecycles failed with a GaswException%n", errors.get());
+        }
+        return elapsed;
+    }
+
+    private void finish(ListenerPlugin listener, GaswOutput output) throws GaswException {
+
+        long start = System.nanoTime();
+        listener.jobFinished(output);
+        latency.recordNanos(System.nanoTime() - start);
+        completions.incrementAndGet();
+    }
+
+    private void report(long elapsed) {
+
+        LogHistogram histogram = latency.snapshot();
+        System.out.printf("%d completions in %.1f s: %.0f completions/s%n", completions.get(),
+                elapsed / 1e9, completions.get() / (elapsed / 1e9));
+        System.out.printf("jobFinished latency (us): p50 %d, p90 %d, p99 %d, p99.9 %d, max %d%n",
+                histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90),
+                histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9),
+                histogram.getValueAtPercentile(100));
+    }
+
+    /**
+     * Compares every counter of the Stats rows with the expected ones.
+     *
+     * @return whether there is no mismatch
+     */
+    private boolean verify(InMemoryStatsDAO statsDAO) throws ReflectiveOperationException {
+
+        List<Method> getters = new ArrayList<>();
+        for (Method method : Stats.class.getMethods()) {
+            Class<?> type = method.getReturnType();
+            if (method.getName().startsWith("get") && method.getParameterCount() == 0
+                    && (type == int.class || type == long.class)) {
+                getters.add(method);
+            }
+        }
+        int mismatches = 0;
+        for (Map.Entry<String, StatsCounters> entry : expected.entrySet()) {
+            Stats actual = statsDAO.getAll().get(entry.getKey());
+            if (actual == null) {
+                System.out.printf("MISMATCH %s: no Stats row%n", entry.getKey());
+                mismatches++;
+                continue;
+            }
+            Stats wanted = new Stats(entry.getKey());
+            entry.getValue().setTo(wanted);
+            for (Method getter : getters) {
+                Object expectedValue = invoke(getter, wanted);
+                Object actualValue = invoke(getter, actual);
+                if (!expectedValue.equals(actualValue)) {
+                    System.out.printf("MISMATCH %s %s: expected %s, got %s%n", entry.getKey(),
+                            getter.getName().substring(3), expectedValue, actualValue);
+                    mismatches++;
+                }
+            }
+        }
+        System.out.printf("%d Stats rows checked, %d mismatches%n", expected.size(), mismatches);
+        return mismatches == 0;
+    }
+
+    private static Object invoke(Method getter, Stats stats) throws ReflectiveOperationException {
+
+        try {
+            return getter.invoke(stats);
+        } catch (InvocationTargetException ex) {
+            throw new ReflectiveOperationException(ex.getCause());
+        }
+    }
+
+    private GaswStatus pickStatus(SplittableRandom random) {
+
+        int total = mix.values().stream().mapToInt(Integer::intValue).sum();
+        int pick = random.nextInt(total);
+        for (Map.Entry<GaswStatus, Integer> entry : mix.entrySet()) {
+            pick -= entry.getValue();
+            if (pick < 0) {
+                return entry.getKey();
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private static Map<GaswStatus, Integer> parseMix(String value) {
+
+        Map<GaswStatus, Integer> mix = new EnumMap<>(GaswStatus.class);
+        for (String part : value.split(",")) {
+            String[] weight = part.split("=");
+            mix.put(GaswStatus.valueOf(weight[0].trim()), Integer.parseInt(weight[1].trim()));
+        }
+        return mix;
+    }
+
+    private static double rate(String name, double defaultValue) {
+        return Double.parseDouble(System.getProperty(name, Double.toString(defaultValue)));
+    }
+
+    private record Lifecycle(Job submitted, Job finished, GaswOutput output, boolean duplicated) {
+    }
+}
@@ -0,0 +1,316 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats;
+
+import fr.insalyon.creatis.gasw.GaswException;
+import fr.insalyon.creatis.gasw.GaswExitCode;
+import fr.insalyon.creatis.gasw.GaswOutput;
+import fr.insalyon.creatis.gasw.dao.DAOException;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsAccumulatorStore;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCounters;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.journal.StatsJournal;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.monitoring.StatsListenerMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind pipeline for finished jobs. GASW threads only enqueue the
+ * job outputs; a single background thread resolves them, folds them into
+ * the per-simulation counters of a {@link StatsAccumulatorStore} and writes
+ * one merged update per simulation through the {@link StatsDAOGuard} when
+ * the batch size or the flush interval is reached. The store is also the
+ * guard's backlog, so deltas that could not be written are merged again on
+ * the next flush. Simulations idle for a whole interval are released from
+ * the store.
+ *
+ * With a {@link StatsJournal}, each job is journaled when enqueued, and
+ * each flush journals again the buffered deltas, the jobs still queued and
+ * the ID of the last processed job, so that a crash loses neither.
+ *
+ * A batch whose jobs cannot be looked up in the database is kept and
+ * retried on each flush; the next jobs wait behind it, so that the ID of
+ * the last processed job never passes an unprocessed one.
+ */
+class AsyncStatsWriter implements Runnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AsyncStatsWriter.class);
+    private final StatsListener listener;
+    private final StatsDAOGuard guard;
+    private final StatsListenerMetrics metrics;
+    private final BlockingQueue<Entry> queue;
+    private final int batchSize;
+    private final long flushInterval;
+    private final StatsAccumulatorStore store;
+    private final StatsJournal journal;
+    private final Thread thread;
+    private final Object submitLock = new Object();
+    private final List<Entry> retried = new ArrayList<>();
+    private volatile boolean running;
+    private volatile boolean stopping;
+    private volatile boolean flushRequested;
+    private long lastID;
+    private long lastFolded;
+    private int pending;
+
+    private record Entry(long id, GaswOutput gaswOutput) {
+    }
+
+    AsyncStatsWriter(StatsListener listener, StatsDAOGuard guard, StatsListenerMetrics metrics, StatsAccumulatorStore store, StatsJournal journal, int queueSize, int batchSize, long flushInterval) {
+
+        this.listener = listener;
+        this.guard = guard;
+        this.metrics = metrics;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.store = store;
+        this.journal = journal;
+        this.thread = new Thread(this, "stats-writer");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Enqueues the jobs replayed from the journal, ahead of the new ones.
+     * Must be called before {@link #start}.
+     *
+     * @param jobs jobs enqueued but not processed before the crash
+     * @param lastID highest job ID found in the journal
+     */
+    void resubmit(List<StatsJournal.PendingJob> jobs, long lastID) {
+
+        for (StatsJournal.PendingJob job : jobs) {
+            retried.add(new Entry(job.id(), new GaswOutput(job.jobID(),
+                    exitCode(job.exitCode()), "", null, null, null, null, null)));
+        }
+        this.lastID = lastID;
+        this.lastFolded = lastID;
+    }
+
+    void start() {
+        running = true;
+        thread.start();
+    }
+
+    /**
+     * Enqueues a finished job, blocking while the queue is full.
+     *
+     * @param gaswOutput output of the finished job
+     * @throws GaswException if the writer is stopped or the caller is interrupted
+     */
+    void submit(GaswOutput gaswOutput) throws GaswException {
+
+        Entry entry;
+        try {
+            // IDs follow the queue order, and no job is enqueued once
+            // shutdown cleared the running flag under the same lock
+            synchronized (submitLock) {
+                if (!running) {
+                    throw new GaswException("Stats writer is not running");
+                }
+                entry = new Entry(lastID + 1, gaswOutput);
+                while (!queue.offer(entry, 100, TimeUnit.MILLISECONDS)) {
+                    if (stopping) {
+                        throw new GaswException("Stats writer is stopping");
+                    }
+                }
+                lastID = entry.id();
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new GaswException(ex);
+        }
+        if (journal != null && journal.appendPending(entry.id(), gaswOutput.getJobID(),
+                gaswOutput.getExitCode().getExitCode()) == StatsJournal.Append.FULL) {
+            // the next flush truncates the journal and journals the job again
+            flushRequested = true;
+        }
+    }
+
+    /**
+     * Stops accepting jobs, drains the queue and flushes the pending deltas.
+     */
+    void shutdown() {
+
+        // a submission blocked on a full queue gives up instead of holding the lock
+        stopping = true;
+        synchronized (submitLock) {
+            running = false;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            logger.warn("Interrupted while waiting for the stats writer to flush");
+        }
+    }
+
+    @Override
+    public void run() {
+
+        // jobs and deltas replayed from the journal are flushed right away
+        boolean replay = store.size() > 0 || !retried.isEmpty();
+        long nextFlush = System.currentTimeMillis() + (replay ? 0 : flushInterval);
+
+        while (running || (!queue.isEmpty() && retried.isEmpty())) {
+            try {
+                long wait = Math.max(0, nextFlush - System.currentTimeMillis());
+                if (!retried.isEmpty()) {
+                    TimeUnit.MILLISECONDS.sleep(wait);
+                    if (fold(retried)) {
+                        retried.clear();
+                    }
+                } else {
+                    Entry entry = queue.poll(wait, TimeUnit.MILLISECONDS);
+                    if (entry != null) {
+                        List<Entry> batch = new ArrayList<>();
+                        batch.add(entry);
+                        queue.drainTo(batch, Math.max(0, batchSize - pending - 1));
+                        if (!fold(batch)) {
+                            retried.addAll(batch);
+                        }
+                    }
+                }
+            } catch (InterruptedException ex) {
+                logger.warn("Stats writer interrupted, flushing pending stats");
+                break;
+            }
+            if (pending >= batchSize || flushRequested || System.currentTimeMillis() >= nextFlush) {
+                flush();
+                nextFlush = System.currentTimeMillis() + flushInterval;
+            }
+        }
+        // last attempt for the jobs left behind a failed batch
+        if (!retried.isEmpty() && fold(retried)) {
+            retried.clear();
+        }
+        List<Entry> batch = new ArrayList<>();
+        while (retried.isEmpty() && queue.drainTo(batch, batchSize) > 0) {
+            if (!fold(batch)) {
+                retried.addAll(batch);
+            }
+            batch.clear();
+        }
+        if (!retried.isEmpty()) {
+            logger.error("Unable to process {} finished jobs before stopping{}", retried.size() + queue.size(),
+                    journal != null ? ", they are kept in the stats journal" : "");
+        }
+        flush();
+    }
+
+    /**
+     * Resolves a batch of jobs and records their deltas. Jobs are marked as
+     * processed only once resolved, so a batch that failed can be retried.
+     *
+     * @return false if the jobs could not be looked up, none being recorded
+     */
+    private boolean fold(List<Entry> batch) {
+
+        List<GaswOutput> gaswOutputs = new ArrayList<>(batch.size());
+        for (Entry entry : batch) {
+            gaswOutputs.add(entry.gaswOutput());
+        }
+        List<JobTimeline> jobs;
+        try {
+            jobs = listener.resolveJobs(gaswOutputs);
+        } catch (DAOException ex) {
+            metrics.daoError();
+            logger.error("Unable to process {} finished jobs, retrying on the next flush", batch.size(), ex);
+            return false;
+        }
+        for (JobTimeline job : jobs) {
+            if (!listener.firstCompletion(job)) {
+                continue;
+            }
+            listener.observe(job);
+            if (!store.record(job.simulationID(), job)) {
+                // store full: write this job through
+                StatsCounters counters = new StatsCounters();
+                counters.record(job);
+                guard.write(job.simulationID(), counters);
+            }
+        }
+        lastFolded = batch.get(batch.size() - 1).id();
+        pending += batch.size();
+        return true;
+    }
+
+    private void flush() {
+
+        guard.flushBacklog();
+        if (journal != null) {
+            // only the deltas that are still buffered and the jobs that are
+            // still queued need to be kept
+            flushRequested = false;
+            journal.truncate();
+            int lost = journal.appendWatermark(lastFolded) == StatsJournal.Append.FULL ? 1 : 0;
+            List<Entry> unprocessed = new ArrayList<>(retried);
+            unprocessed.addAll(queue);
+            for (Entry entry : unprocessed) {
+                if (journal.appendPending(entry.id(), entry.gaswOutput().getJobID(),
+                        entry.gaswOutput().getExitCode().getExitCode()) == StatsJournal.Append.FULL) {
+                    lost++;
+                }
+            }
+            for (String simulationID : store.getSimulationIDs()) {
+                StatsCounters counters = store.get(simulationID);
+                if (counters != null && !counters.isEmpty()
+                        && journal.append(simulationID, counters) == StatsJournal.Append.FULL) {
+                    lost++;
+                }
+            }
+            if (lost > 0) {
+                logger.error("Stats journal full: {} queued jobs or buffered deltas would be lost on a crash, "
+                        + "increase {}", lost, StatsConstants.LAB_JOURNAL_SIZE);
+            }
+        }
+        pending = 0;
+    }
+
+    private static GaswExitCode exitCode(int code) {
+
+        for (GaswExitCode exitCode : GaswExitCode.values()) {
+            if (exitCode.getExitCode() == code) {
+                return exitCode;
+            }
+        }
+        return GaswExitCode.UNDEFINED;
+    }
+}
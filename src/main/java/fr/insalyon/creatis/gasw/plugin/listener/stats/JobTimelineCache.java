@@ -0,0 +1,148 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats;
+
+import fr.insalyon.creatis.gasw.bean.Job;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory timelines of the running jobs, fed by the job lifecycle
+ * callbacks and keyed by job file name. An entry is removed as soon as the
+ * job finishes, and no new job is tracked once the capacity is reached.
+ *
+ * Entries whose completion never comes, e.g. jobs GASW gave up on or a
+ * status change arriving after the completion, are evicted by
+ * {@link #expire}: finished jobs after a few minutes, other jobs after the
+ * expiry, so that leaked entries cannot fill the cache for good.
+ */
+class JobTimelineCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobTimelineCache.class);
+    private static final long FINISHED_EXPIRY = TimeUnit.MINUTES.toMillis(10);
+
+    private record Entry(JobTimeline timeline, long updated) {
+    }
+
+    private final ConcurrentMap<String, Entry> timelines;
+    private final int capacity;
+    private volatile boolean full;
+
+    JobTimelineCache(int capacity) {
+        this.timelines = new ConcurrentHashMap<>();
+        this.capacity = capacity;
+    }
+
+    void track(Job job) {
+
+        if (job.getFileName() == null) {
+            return;
+        }
+        Entry entry = new Entry(JobTimeline.of(job), System.currentTimeMillis());
+        if (timelines.size() < capacity) {
+            timelines.put(job.getFileName(), entry);
+        } else if (timelines.replace(job.getFileName(), entry) == null && !full) {
+            full = true;
+            logger.warn("The job timeline cache is full ({} jobs), new jobs will be looked up "
+                    + "in the database until entries expire", capacity);
+        }
+    }
+
+    void refresh(Job job) {
+
+        if (job.getFileName() != null) {
+            timelines.computeIfPresent(job.getFileName(),
+                    (k, v) -> new Entry(JobTimeline.of(job), System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Removes the timeline of a job and returns it if it describes a
+     * finished job with the given exit code.
+     *
+     * @param fileName job file name
+     * @param exitCode exit code reported by GASW
+     * @return the timeline, or null on a cache miss
+     */
+    JobTimeline consume(String fileName, int exitCode) {
+
+        Entry entry = timelines.remove(fileName);
+        if (entry != null && entry.timeline().isFinished() && entry.timeline().exitCode() == exitCode) {
+            return entry.timeline();
+        }
+        return null;
+    }
+
+    /**
+     * Evicts the timelines not updated for a while.
+     *
+     * @param now current time, in milliseconds
+     * @param expiry idle time after which the timeline of an unfinished
+     * job is evicted
+     * @return the number of evicted timelines
+     */
+    int expire(long now, long expiry) {
+
+        int evicted = 0;
+        for (Iterator<Entry> it = timelines.values().iterator(); it.hasNext();) {
+            Entry entry = it.next();
+            long idle = now - entry.updated();
+            if (idle > (entry.timeline().isFinished() ? Math.min(FINISHED_EXPIRY, expiry) : expiry)) {
+                it.remove();
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            logger.info("Evicted {} stale job timelines", evicted);
+        }
+        if (timelines.size() < capacity) {
+            full = false;
+        }
+        return evicted;
+    }
+
+    Iterable<JobTimeline> values() {
+        return () -> timelines.values().stream().map(Entry::timeline).iterator();
+    }
+
+    int size() {
+        return timelines.size();
+    }
+}
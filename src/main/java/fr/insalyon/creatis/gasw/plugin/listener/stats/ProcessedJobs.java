@@ -0,0 +1,160 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Jobs whose completion was already accounted, by simulation. Job IDs are
+ * stored as 64-bit fingerprints in per-simulation open addressing sets, so
+ * a job costs 8 to 16 bytes. Two job IDs of a simulation may only be
+ * confused if their fingerprints collide, i.e. with a probability around
+ * n^2 / 2^65 for n jobs. Simulations without completions for the expiry
+ * delay are forgotten.
+ */
+class ProcessedJobs {
+
+    private final Map<String, Fingerprints> simulations = new ConcurrentHashMap<>();
+
+    /**
+     * Marks a job as processed.
+     *
+     * @return false if the job was already processed
+     */
+    boolean add(String simulationID, String jobID) {
+
+        if (jobID == null) {
+            return true;
+        }
+        long fingerprint = fingerprint(jobID);
+        long now = System.currentTimeMillis();
+        while (true) {
+            Fingerprints set = simulations.computeIfAbsent(simulationID, k -> new Fingerprints());
+            synchronized (set) {
+                if (!set.expired) {
+                    set.lastSeen = now;
+                    return set.add(fingerprint);
+                }
+            }
+        }
+    }
+
+    /**
+     * Forgets the simulations without completions for the given delay.
+     *
+     * @return the number of forgotten simulations
+     */
+    int expire(long idle) {
+
+        long limit = System.currentTimeMillis() - idle;
+        int expired = 0;
+        for (Map.Entry<String, Fingerprints> entry : simulations.entrySet()) {
+            Fingerprints set = entry.getValue();
+            synchronized (set) {
+                if (set.lastSeen < limit) {
+                    set.expired = true;
+                    simulations.remove(entry.getKey(), set);
+                    expired++;
+                }
+            }
+        }
+        return expired;
+    }
+
+    int size() {
+        return simulations.size();
+    }
+
+    static long fingerprint(String jobID) {
+
+        // FNV-1a followed by the murmur3 finalizer, 0 marks empty slots
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < jobID.length(); i++) {
+            h ^= jobID.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h != 0 ? h : 1;
+    }
+
+    private static class Fingerprints {
+
+        private long[] slots = new long[16];
+        private int size;
+        private long lastSeen;
+        private boolean expired;
+
+        private boolean add(long fingerprint) {
+
+            if ((size + 1) * 4 > slots.length * 3) {
+                grow();
+            }
+            if (!insert(slots, fingerprint)) {
+                return false;
+            }
+            size++;
+            return true;
+        }
+
+        private void grow() {
+
+            long[] larger = new long[slots.length * 2];
+            for (long fingerprint : slots) {
+                if (fingerprint != 0) {
+                    insert(larger, fingerprint);
+                }
+            }
+            slots = larger;
+        }
+
+        private static boolean insert(long[] slots, long fingerprint) {
+
+            int mask = slots.length - 1;
+            int i = (int) fingerprint & mask;
+            while (slots[i] != 0) {
+                if (slots[i] == fingerprint) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            slots[i] = fingerprint;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Circuit breaker around the workflows-db calls. It opens after a number of
+ * consecutive failures, rejects calls while open, and lets a single trial
+ * call through once the open duration has elapsed: a success closes it, a
+ * failure opens it again.
+ */
+class StatsCircuitBreaker {
+
+    enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(StatsCircuitBreaker.class);
+    private final int failureThreshold;
+    private final long openDuration;
+    private State state = State.CLOSED;
+    private int failures;
+    private long openedAt;
+
+    StatsCircuitBreaker(int failureThreshold, long openDuration) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openDuration = openDuration;
+    }
+
+    /**
+     * Every allowed call must be followed by {@link #success} or
+     * {@link #failure}.
+     *
+     * @return whether a call may be made
+     */
+    synchronized boolean allow() {
+
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt >= openDuration) {
+                    state = State.HALF_OPEN;
+                    return true;
+                }
+                return false;
+            default:
+                // a trial call is in flight
+                return false;
+        }
+    }
+
+    synchronized void success() {
+
+        if (state != State.CLOSED) {
+            logger.info("Workflows database is back, closing the stats circuit breaker");
+        }
+        state = State.CLOSED;
+        failures = 0;
+    }
+
+    synchronized void failure() {
+
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+            logger.warn("Opening the stats circuit breaker after {} failures, retrying in {} ms",
+                    failures, openDuration);
+            state = State.OPEN;
+            openedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @return whether calls are currently rejected, without starting a trial
+     */
+    synchronized boolean isOpen() {
+        return state == State.HALF_OPEN
+                || (state == State.OPEN && System.currentTimeMillis() - openedAt < openDuration);
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+}
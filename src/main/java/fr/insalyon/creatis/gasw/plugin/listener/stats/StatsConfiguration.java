@@ -0,0 +1,373 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Properties;
+
+/**
+ * Reads the plugin settings from the GASW settings file. System properties
+ * with the same label take precedence over the file.
+ */
+public class StatsConfiguration {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatsConfiguration.class);
+    private static StatsConfiguration instance;
+    private final Properties properties;
+    private boolean metricsEnabled;
+    private int lockStripes;
+    private boolean timelineEnabled;
+    private int timelineCapacity;
+    private long timelineExpiry;
+    private boolean asyncEnabled;
+    private int asyncQueueSize;
+    private int asyncBatchSize;
+    private long asyncFlushInterval;
+    private int accumulatorCapacity;
+    private String journalFile;
+    private boolean dedupEnabled;
+    private long dedupExpiry;
+    private int dbMaxInFlight;
+    private long dbTimeout;
+    private int breakerFailures;
+    private long breakerOpenDuration;
+    private long backlogFlushInterval;
+    private boolean histogramEnabled;
+    private boolean dimensionEnabled;
+    private int dimensionCapacity;
+    private long dimensionFlushInterval;
+    private boolean stragglerEnabled;
+    private double stragglerPercentile;
+    private int stragglerMinSamples;
+    private int stragglerCapacity;
+    private long stragglerScanInterval;
+    private long stragglerExpiry;
+    private boolean rollupEnabled;
+    private long rollupWidth;
+    private int rollupSize;
+    private int backfillChunkSize;
+    private int backfillThreads;
+    private long histogramFlushInterval;
+    private int journalSize;
+    private String exportDir;
+    private long exportFileSize;
+    private int exportQueueSize;
+    private long exportFlushInterval;
+    private int reconcileParallelism;
+
+    public synchronized static StatsConfiguration getInstance() {
+        if (instance == null) {
+            instance = new StatsConfiguration();
+        }
+        return instance;
+    }
+
+    private StatsConfiguration() {
+
+        properties = new Properties();
+        File settings = new File(StatsConstants.SETTINGS_FILE);
+        if (settings.exists()) {
+            try (InputStream in = new FileInputStream(settings)) {
+                properties.load(in);
+            } catch (IOException ex) {
+                logger.warn("Unable to read {}, using default stats settings",
+                        StatsConstants.SETTINGS_FILE, ex);
+            }
+        }
+
+        metricsEnabled = getBoolean(StatsConstants.LAB_METRICS_ENABLED, true);
+        lockStripes = getInt(StatsConstants.LAB_LOCK_STRIPES, 64);
+        timelineEnabled = getBoolean(StatsConstants.LAB_TIMELINE_ENABLED, true);
+        timelineCapacity = getInt(StatsConstants.LAB_TIMELINE_CAPACITY, 100000);
+        timelineExpiry = getLong(StatsConstants.LAB_TIMELINE_EXPIRY, 48 * 3600 * 1000L);
+        asyncEnabled = getBoolean(StatsConstants.LAB_ASYNC_ENABLED, false);
+        asyncQueueSize = getInt(StatsConstants.LAB_ASYNC_QUEUE_SIZE, 10000);
+        asyncBatchSize = getInt(StatsConstants.LAB_ASYNC_BATCH_SIZE, 500);
+        asyncFlushInterval = getLong(StatsConstants.LAB_ASYNC_FLUSH_INTERVAL, 5000);
+        accumulatorCapacity = getInt(StatsConstants.LAB_ACCUMULATOR_CAPACITY, 4096);
+        journalFile = getString(StatsConstants.LAB_JOURNAL_FILE, "");
+        journalSize = getInt(StatsConstants.LAB_JOURNAL_SIZE, 16 * 1024 * 1024);
+        dedupEnabled = getBoolean(StatsConstants.LAB_DEDUP_ENABLED, true);
+        dedupExpiry = getLong(StatsConstants.LAB_DEDUP_EXPIRY, 6 * 3600 * 1000L);
+        dbMaxInFlight = getInt(StatsConstants.LAB_DB_MAX_IN_FLIGHT, 4);
+        dbTimeout = getLong(StatsConstants.LAB_DB_TIMEOUT, 2000);
+        breakerFailures = getInt(StatsConstants.LAB_BREAKER_FAILURES, 5);
+        breakerOpenDuration = getLong(StatsConstants.LAB_BREAKER_OPEN_DURATION, 30000);
+        backlogFlushInterval = getLong(StatsConstants.LAB_BACKLOG_FLUSH_INTERVAL, 5000);
+        dimensionEnabled = getBoolean(StatsConstants.LAB_DIMENSION_ENABLED, false);
+        dimensionCapacity = getInt(StatsConstants.LAB_DIMENSION_CAPACITY, 10000);
+        dimensionFlushInterval = getLong(StatsConstants.LAB_DIMENSION_FLUSH_INTERVAL, 60000);
+        stragglerEnabled = getBoolean(StatsConstants.LAB_STRAGGLER_ENABLED, false);
+        stragglerPercentile = getPercentile(StatsConstants.LAB_STRAGGLER_PERCENTILE, 99);
+        stragglerMinSamples = getInt(StatsConstants.LAB_STRAGGLER_MIN_SAMPLES, 20);
+        stragglerCapacity = getInt(StatsConstants.LAB_STRAGGLER_CAPACITY, 10000);
+        stragglerScanInterval = getLong(StatsConstants.LAB_STRAGGLER_SCAN_INTERVAL, 60000);
+        stragglerExpiry = getLong(StatsConstants.LAB_STRAGGLER_EXPIRY, 6 * 3600 * 1000L);
+        rollupEnabled = getBoolean(StatsConstants.LAB_ROLLUP_ENABLED, false);
+        rollupWidth = getLong(StatsConstants.LAB_ROLLUP_WIDTH, 60000);
+        rollupSize = getInt(StatsConstants.LAB_ROLLUP_SIZE, 360);
+        backfillChunkSize = getInt(StatsConstants.LAB_BACKFILL_CHUNK_SIZE, 1000);
+        backfillThreads = getInt(StatsConstants.LAB_BACKFILL_THREADS, Runtime.getRuntime().availableProcessors());
+        histogramEnabled = getBoolean(StatsConstants.LAB_HISTOGRAM_ENABLED, false);
+        histogramFlushInterval = getLong(StatsConstants.LAB_HISTOGRAM_FLUSH_INTERVAL, 60000);
+        exportDir = getString(StatsConstants.LAB_EXPORT_DIR, "");
+        exportFileSize = getLong(StatsConstants.LAB_EXPORT_FILE_SIZE, 64 * 1024 * 1024L);
+        exportQueueSize = getInt(StatsConstants.LAB_EXPORT_QUEUE_SIZE, 100000);
+        exportFlushInterval = getLong(StatsConstants.LAB_EXPORT_FLUSH_INTERVAL, 1000);
+        reconcileParallelism = getInt(StatsConstants.LAB_RECONCILE_PARALLELISM, 8);
+    }
+
+    private String getString(String label, String defaultValue) {
+        String value = System.getProperty(label, properties.getProperty(label));
+        return value != null ? value.trim() : defaultValue;
+    }
+
+    private boolean getBoolean(String label, boolean defaultValue) {
+        return Boolean.parseBoolean(getString(label, String.valueOf(defaultValue)));
+    }
+
+    private int getInt(String label, int defaultValue) {
+
+        long value = getLong(label, defaultValue);
+        if (value > Integer.MAX_VALUE) {
+            logger.warn("Invalid value {} for {}: must be at most {}, using {}",
+                    value, label, Integer.MAX_VALUE, defaultValue);
+            return defaultValue;
+        }
+        return (int) value;
+    }
+
+    /**
+     * Every numeric setting is a size, a count or a duration: values that
+     * are not positive are rejected.
+     */
+    private long getLong(String label, long defaultValue) {
+
+        long value;
+        try {
+            value = Long.parseLong(getString(label, String.valueOf(defaultValue)));
+        } catch (NumberFormatException ex) {
+            logger.warn("Invalid value for {}, using {}", label, defaultValue);
+            return defaultValue;
+        }
+        if (value <= 0) {
+            logger.warn("Invalid value {} for {}: must be positive, using {}", value, label, defaultValue);
+            return defaultValue;
+        }
+        return value;
+    }
+
+    private double getPercentile(String label, double defaultValue) {
+
+        double value;
+        try {
+            value = Double.parseDouble(getString(label, String.valueOf(defaultValue)));
+        } catch (NumberFormatException ex) {
+            logger.warn("Invalid value for {}, using {}", label, defaultValue);
+            return defaultValue;
+        }
+        if (!(value > 0 && value <= 100)) {
+            logger.warn("Invalid value {} for {}: must be above 0 and at most 100, using {}",
+                    value, label, defaultValue);
+            return defaultValue;
+        }
+        return value;
+    }
+
+    public boolean isMetricsEnabled() {
+        return metricsEnabled;
+    }
+
+    public int getLockStripes() {
+        return lockStripes;
+    }
+
+    public boolean isTimelineEnabled() {
+        return timelineEnabled;
+    }
+
+    public int getTimelineCapacity() {
+        return timelineCapacity;
+    }
+
+    public boolean isAsyncEnabled() {
+        return asyncEnabled;
+    }
+
+    public int getAsyncQueueSize() {
+        return asyncQueueSize;
+    }
+
+    public int getAsyncBatchSize() {
+        return asyncBatchSize;
+    }
+
+    public long getAsyncFlushInterval() {
+        return asyncFlushInterval;
+    }
+
+    public int getAccumulatorCapacity() {
+        return accumulatorCapacity;
+    }
+
+    public String getJournalFile() {
+        return journalFile;
+    }
+
+    public int getJournalSize() {
+        return journalSize;
+    }
+
+    public boolean isHistogramEnabled() {
+        return histogramEnabled;
+    }
+
+    public long getHistogramFlushInterval() {
+        return histogramFlushInterval;
+    }
+
+    public int getBackfillChunkSize() {
+        return backfillChunkSize;
+    }
+
+    public int getBackfillThreads() {
+        return backfillThreads;
+    }
+
+    public int getDbMaxInFlight() {
+        return dbMaxInFlight;
+    }
+
+    public long getDbTimeout() {
+        return dbTimeout;
+    }
+
+    public int getBreakerFailures() {
+        return breakerFailures;
+    }
+
+    public long getBreakerOpenDuration() {
+        return breakerOpenDuration;
+    }
+
+    public long getBacklogFlushInterval() {
+        return backlogFlushInterval;
+    }
+
+    public boolean isDedupEnabled() {
+        return dedupEnabled;
+    }
+
+    public long getDedupExpiry() {
+        return dedupExpiry;
+    }
+
+    public boolean isRollupEnabled() {
+        return rollupEnabled;
+    }
+
+    public long getRollupWidth() {
+        return rollupWidth;
+    }
+
+    public int getRollupSize() {
+        return rollupSize;
+    }
+
+    public boolean isDimensionEnabled() {
+        return dimensionEnabled;
+    }
+
+    public int getDimensionCapacity() {
+        return dimensionCapacity;
+    }
+
+    public long getDimensionFlushInterval() {
+        return dimensionFlushInterval;
+    }
+
+    public boolean isStragglerEnabled() {
+        return stragglerEnabled;
+    }
+
+    public double getStragglerPercentile() {
+        return stragglerPercentile;
+    }
+
+    public int getStragglerMinSamples() {
+        return stragglerMinSamples;
+    }
+
+    public int getStragglerCapacity() {
+        return stragglerCapacity;
+    }
+
+    public long getStragglerScanInterval() {
+        return stragglerScanInterval;
+    }
+
+    public long getStragglerExpiry() {
+        return stragglerExpiry;
+    }
+
+    public String getExportDir() {
+        return exportDir;
+    }
+
+    public long getExportFileSize() {
+        return exportFileSize;
+    }
+
+    public int getExportQueueSize() {
+        return exportQueueSize;
+    }
+
+    public long getExportFlushInterval() {
+        return exportFlushInterval;
+    }
+
+    public int getReconcileParallelism() {
+        return reconcileParallelism;
+    }
+
+    public long getTimelineExpiry() {
+        return timelineExpiry;
+    }
+}
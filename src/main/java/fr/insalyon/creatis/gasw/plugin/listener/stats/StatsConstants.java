@@ -36,4 +36,47 @@ package fr.insalyon.creatis.gasw.plugin.listener.stats;
 public class StatsConstants {
 
     public final static String NAME = "Workflow Stats";
+    public final static String SETTINGS_FILE = "conf/settings.conf";
+
+    // Labels
+    public final static String LAB_METRICS_ENABLED = "stats.metrics.enabled";
+    public final static String LAB_LOCK_STRIPES = "stats.lock.stripes";
+    public final static String LAB_TIMELINE_ENABLED = "stats.timeline.enabled";
+    public final static String LAB_TIMELINE_CAPACITY = "stats.timeline.capacity";
+    public final static String LAB_TIMELINE_EXPIRY = "stats.timeline.expiry";
+    public final static String LAB_ASYNC_ENABLED = "stats.async.enabled";
+    public final static String LAB_ASYNC_QUEUE_SIZE = "stats.async.queue.size";
+    public final static String LAB_ASYNC_BATCH_SIZE = "stats.async.batch.size";
+    public final static String LAB_ASYNC_FLUSH_INTERVAL = "stats.async.flush.interval";
+    public final static String LAB_ACCUMULATOR_CAPACITY = "stats.accumulator.capacity";
+    public final static String LAB_DEDUP_ENABLED = "stats.dedup.enabled";
+    public final static String LAB_DEDUP_EXPIRY = "stats.dedup.expiry";
+    public final static String LAB_DB_MAX_IN_FLIGHT = "stats.db.max.inflight";
+    public final static String LAB_DB_TIMEOUT = "stats.db.timeout";
+    public final static String LAB_BREAKER_FAILURES = "stats.breaker.failures";
+    public final static String LAB_BREAKER_OPEN_DURATION = "stats.breaker.open.duration";
+    public final static String LAB_BACKLOG_FLUSH_INTERVAL = "stats.backlog.flush.interval";
+    public final static String LAB_HISTOGRAM_ENABLED = "stats.histogram.enabled";
+    public final static String LAB_HISTOGRAM_FLUSH_INTERVAL = "stats.histogram.flush.interval";
+    public final static String LAB_DIMENSION_ENABLED = "stats.dimension.enabled";
+    public final static String LAB_DIMENSION_CAPACITY = "stats.dimension.capacity";
+    public final static String LAB_DIMENSION_FLUSH_INTERVAL = "stats.dimension.flush.interval";
+    public final static String LAB_STRAGGLER_ENABLED = "stats.straggler.enabled";
+    public final static String LAB_STRAGGLER_PERCENTILE = "stats.straggler.percentile";
+    public final static String LAB_STRAGGLER_MIN_SAMPLES = "stats.straggler.min.samples";
+    public final static String LAB_STRAGGLER_CAPACITY = "stats.straggler.capacity";
+    public final static String LAB_STRAGGLER_SCAN_INTERVAL = "stats.straggler.scan.interval";
+    public final static String LAB_STRAGGLER_EXPIRY = "stats.straggler.expiry";
+    public final static String LAB_ROLLUP_ENABLED = "stats.rollup.enabled";
+    public final static String LAB_ROLLUP_WIDTH = "stats.rollup.width";
+    public final static String LAB_ROLLUP_SIZE = "stats.rollup.size";
+    public final static String LAB_BACKFILL_CHUNK_SIZE = "stats.backfill.chunk.size";
+    public final static String LAB_BACKFILL_THREADS = "stats.backfill.threads";
+    public final static String LAB_RECONCILE_PARALLELISM = "stats.reconcile.parallelism";
+    public final static String LAB_EXPORT_DIR = "stats.export.dir";
+    public final static String LAB_EXPORT_FILE_SIZE = "stats.export.file.size";
+    public final static String LAB_EXPORT_QUEUE_SIZE = "stats.export.queue.size";
+    public final static String LAB_EXPORT_FLUSH_INTERVAL = "stats.export.flush.interval";
+    public final static String LAB_JOURNAL_FILE = "stats.journal.file";
+    public final static String LAB_JOURNAL_SIZE = "stats.journal.size";
 }
@@ -0,0 +1,270 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats;
+
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsAccumulatorStore;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCategory;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCounters;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.monitoring.StatsListenerMetrics;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.bean.Stats;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.dao.StatsDAO;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.dao.WorkflowsDBDAOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Overload policy around the {@link StatsDAO} writes. Writes run on a small
+ * pool bounded by a semaphore, callers wait for them at most the configured
+ * timeout, and a {@link StatsCircuitBreaker} stops calling the database
+ * after repeated failures. Deltas that are rejected, or whose write fails,
+ * are kept in a backlog store and written again by {@link #flushBacklog}.
+ *
+ * The pool size, stats.db.max.inflight (4 by default), caps the number of
+ * simulations written in parallel: in synchronous mode, a completion that
+ * finds every slot busy is deferred to the backlog instead of waiting, so
+ * its Stats row lags by up to the backlog flush interval. Sites running
+ * more simulations at once should size it to their database connections.
+ */
+class StatsDAOGuard {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatsDAOGuard.class);
+    private final StatsDAO statsDAO;
+    private final StripedLocks locks;
+    private final StatsListenerMetrics metrics;
+    private final StatsCircuitBreaker breaker;
+    private final StatsAccumulatorStore backlog;
+    private final Semaphore inFlight;
+    private final ExecutorService executor;
+    private final long timeout;
+
+    StatsDAOGuard(StatsDAO statsDAO, StripedLocks locks, StatsListenerMetrics metrics,
+            StatsCircuitBreaker breaker, StatsAccumulatorStore backlog, int maxInFlight, long timeout) {
+
+        this.statsDAO = statsDAO;
+        this.locks = locks;
+        this.metrics = metrics;
+        this.breaker = breaker;
+        this.backlog = backlog;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.timeout = timeout;
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(maxInFlight, r -> {
+            Thread thread = new Thread(r, "stats-db-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds a delta to the stats of a simulation, or keeps it in the backlog
+     * if the database is unavailable. Never waits longer than the timeout.
+     *
+     * @return whether the delta was written
+     */
+    boolean write(String simulationID, StatsCounters counters) {
+
+        if (!inFlight.tryAcquire()) {
+            // every slot is busy, the delta is merged into the next backlog flush
+            defer(simulationID, counters);
+            return false;
+        }
+        if (!breaker.allow()) {
+            inFlight.release();
+            defer(simulationID, counters);
+            return false;
+        }
+        // the outcome is reported to the breaker once, by the call or by the timeout
+        AtomicBoolean reported = new AtomicBoolean();
+        Future<Boolean> result;
+        try {
+            result = executor.submit(() -> {
+                try {
+                    return persist(simulationID, counters, reported);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException ex) {
+            inFlight.release();
+            breaker.failure();
+            defer(simulationID, counters);
+            return false;
+        }
+        try {
+            return result.get(timeout, TimeUnit.MILLISECONDS);
+
+        } catch (TimeoutException ex) {
+            // the call goes on and defers the delta itself if it fails
+            metrics.statsTimeout();
+            if (reported.compareAndSet(false, true)) {
+                breaker.failure();
+            }
+            logger.warn("Stats write for {} timed out after {} ms", simulationID, timeout);
+            return false;
+        } catch (ExecutionException ex) {
+            logger.error("Unable to write stats for {}", simulationID, ex.getCause());
+            return false;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Writes the deltas of the backlog, stopping as soon as the circuit
+     * breaker opens. Simulations without new deltas are released.
+     */
+    void flushBacklog() {
+
+        for (String simulationID : backlog.getSimulationIDs()) {
+            if (breaker.isOpen()) {
+                return;
+            }
+            StatsCounters counters = backlog.drain(simulationID);
+            if (counters == null) {
+                // idle since the last flush
+                counters = backlog.release(simulationID);
+                if (counters == null) {
+                    continue;
+                }
+            }
+            write(simulationID, counters);
+        }
+    }
+
+    /**
+     * Waits for the calls in flight to complete, and logs the deltas left
+     * in the backlog, e.g. because the circuit breaker is open.
+     */
+    void shutdown() {
+
+        if (!awaitTermination(timeout)) {
+            logger.warn("Stats writes still in flight after {} ms", timeout);
+        }
+        int simulations = 0;
+        long jobs = 0;
+        for (String simulationID : backlog.getSimulationIDs()) {
+            StatsCounters counters = backlog.get(simulationID);
+            if (counters != null && !counters.isEmpty()) {
+                simulations++;
+                for (StatsCategory category : StatsCategory.values()) {
+                    jobs += counters.getCount(category);
+                }
+            }
+        }
+        if (simulations > 0) {
+            logger.error("Stats of {} jobs of {} simulations could not be written before stopping (circuit breaker {})",
+                    jobs, simulations, breaker.getState());
+        }
+    }
+
+    /**
+     * Stops accepting writes and waits for the calls in flight.
+     *
+     * @param timeout maximum time to wait, in milliseconds
+     * @return false if calls were still in flight after the timeout
+     */
+    boolean awaitTermination(long timeout) {
+
+        executor.shutdown();
+        try {
+            return executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    StatsCircuitBreaker getBreaker() {
+        return breaker;
+    }
+
+    private boolean persist(String simulationID, StatsCounters counters, AtomicBoolean reported) {
+
+        ReentrantLock lock = locks.get(simulationID);
+        long start = metrics.start();
+        lock.lock();
+        metrics.lockAcquired(start);
+        try {
+            start = metrics.start();
+            Stats stats = statsDAO.get(simulationID);
+            metrics.statsGet(start);
+            start = metrics.start();
+            if (stats == null) {
+                stats = new Stats(simulationID);
+                counters.addTo(stats);
+                statsDAO.add(stats);
+                metrics.statsAdd(start);
+            } else {
+                counters.addTo(stats);
+                statsDAO.update(stats);
+                metrics.statsUpdate(start);
+            }
+            if (reported.compareAndSet(false, true)) {
+                breaker.success();
+            }
+            return true;
+
+        } catch (WorkflowsDBDAOException | RuntimeException ex) {
+            metrics.workflowsDBError();
+            if (reported.compareAndSet(false, true)) {
+                breaker.failure();
+            }
+            logger.error("Unable to write stats for {}", simulationID, ex);
+            defer(simulationID, counters);
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void defer(String simulationID, StatsCounters counters) {
+
+        metrics.statsDeferred();
+        if (!backlog.add(simulationID, counters)) {
+            logger.error("Stats backlog is full, lost stats delta of {}", simulationID);
+        }
+    }
+}
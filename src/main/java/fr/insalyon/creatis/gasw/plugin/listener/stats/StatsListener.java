@@ -39,9 +39,23 @@ import fr.insalyon.creatis.gasw.bean.Job;
 import fr.insalyon.creatis.gasw.bean.JobMinorStatus;
 import fr.insalyon.creatis.gasw.dao.DAOException;
 import fr.insalyon.creatis.gasw.plugin.ListenerPlugin;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsAccumulatorStore;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCategory;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCounters;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsDimensionStore;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsHistogramStore;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsRollupStore;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.DimensionStats;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.PhaseHistogram;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.StatsBucket;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.dao.StatsJobDAO;
 import fr.insalyon.creatis.gasw.plugin.listener.stats.dao.StatsPluginDAOFactory;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.export.JobRecordSink;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.journal.StatsJournal;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.monitoring.StatsListenerMetrics;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.monitoring.StragglerDetector;
 import fr.insalyon.creatis.moteur.plugins.workflowsdb.WorkflowsDBException;
-import fr.insalyon.creatis.moteur.plugins.workflowsdb.bean.Stats;
 import fr.insalyon.creatis.moteur.plugins.workflowsdb.dao.StatsDAO;
 import fr.insalyon.creatis.moteur.plugins.workflowsdb.dao.WorkflowsDBDAOException;
 import fr.insalyon.creatis.moteur.plugins.workflowsdb.dao.WorkflowsDBDAOFactory;
@@ -49,17 +63,37 @@ import net.xeoh.plugins.base.annotations.PluginImplementation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.ArrayList;
-import java.util.Comparator;
-import java.util.Date;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @PluginImplementation
 public class StatsListener implements ListenerPlugin {
 
     private static final Logger logger = LoggerFactory.getLogger(StatsListener.class);
     private StatsDAO statsDAO;
+    private StatsJobDAO jobDAO;
     private WorkflowsDBDAOFactory workflowsDBDAOFactory;
+    private StripedLocks locks;
+    private StatsDAOGuard guard;
+    private AsyncStatsWriter asyncWriter;
+    private JobTimelineCache timelines;
+    private ProcessedJobs processedJobs;
+    private StatsJournal journal;
+    private StatsHistogramStore histograms;
+    private StatsDimensionStore dimensions;
+    private StragglerDetector stragglers;
+    private StatsRollupStore rollups;
+    private long nextRollup;
+    private JobRecordSink export;
+    private ScheduledExecutorService scheduler;
+    private StatsListenerMetrics metrics;
 
     @Override
     public String getPluginName() {
@@ -68,7 +102,18 @@ public class StatsListener implements ListenerPlugin {
 
     @Override
     public List<Class> getPersistentClasses() throws GaswException {
-        return new ArrayList<Class>();
+
+        List<Class> classes = new ArrayList<Class>();
+        if (StatsConfiguration.getInstance().isHistogramEnabled()) {
+            classes.add(PhaseHistogram.class);
+        }
+        if (StatsConfiguration.getInstance().isDimensionEnabled()) {
+            classes.add(DimensionStats.class);
+        }
+        if (StatsConfiguration.getInstance().isRollupEnabled()) {
+            classes.add(StatsBucket.class);
+        }
+        return classes;
     }
 
     @Override
@@ -77,7 +122,7 @@ public class StatsListener implements ListenerPlugin {
         try {
             logger.info("Loading Workflow Stats GASW Plugin");
             workflowsDBDAOFactory = new WorkflowsDBDAOFactory();
-            statsDAO = workflowsDBDAOFactory.getStatsDAO();
+            load(workflowsDBDAOFactory.getStatsDAO(), null);
 
         } catch (WorkflowsDBDAOException | WorkflowsDBException ex) {
             logger.error("Error", ex);
@@ -85,214 +130,448 @@ public class StatsListener implements ListenerPlugin {
         }
     }
 
+    /**
+     * Sets the listener up with the given DAOs.
+     *
+     * @param statsDAO workflows-db stats DAO
+     * @param jobDAO GASW job DAO, or null to get it from the
+     * {@link StatsPluginDAOFactory} when first needed
+     */
+    void load(StatsDAO statsDAO, StatsJobDAO jobDAO) throws GaswException {
+
+        this.statsDAO = statsDAO;
+        this.jobDAO = jobDAO;
+        try {
+            StatsConfiguration conf = StatsConfiguration.getInstance();
+            metrics = new StatsListenerMetrics(conf.isMetricsEnabled());
+            metrics.register();
+            locks = new StripedLocks(conf.getLockStripes());
+            if (conf.isTimelineEnabled()) {
+                timelines = new JobTimelineCache(conf.getTimelineCapacity());
+            }
+            if (conf.isDedupEnabled()) {
+                processedJobs = new ProcessedJobs();
+            }
+            scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "stats-scheduler");
+                thread.setDaemon(true);
+                return thread;
+            });
+            if (timelines != null) {
+                long expiry = conf.getTimelineExpiry();
+                scheduler.scheduleWithFixedDelay(logged("timeline expiry",
+                        () -> timelines.expire(System.currentTimeMillis(), expiry)), 1, 1, TimeUnit.MINUTES);
+            }
+            if (processedJobs != null) {
+                long expiry = conf.getDedupExpiry();
+                long period = Math.max(1, expiry / 4);
+                scheduler.scheduleWithFixedDelay(logged("dedup expiry", () -> processedJobs.expire(expiry)),
+                        period, period, TimeUnit.MILLISECONDS);
+            }
+            if (conf.isHistogramEnabled()) {
+                histograms = new StatsHistogramStore();
+                scheduler.scheduleWithFixedDelay(logged("histogram flush", this::flushHistograms),
+                        conf.getHistogramFlushInterval(), conf.getHistogramFlushInterval(), TimeUnit.MILLISECONDS);
+            }
+            // deltas that cannot be written are kept here until the database recovers
+            StatsAccumulatorStore store = new StatsAccumulatorStore(conf.getAccumulatorCapacity());
+            guard = new StatsDAOGuard(statsDAO, locks, metrics,
+                    new StatsCircuitBreaker(conf.getBreakerFailures(), conf.getBreakerOpenDuration()),
+                    store, conf.getDbMaxInFlight(), conf.getDbTimeout());
+            if (conf.isStragglerEnabled()) {
+                if (timelines == null) {
+                    logger.warn("Straggler detection needs the job timelines, it is disabled");
+                } else {
+                    stragglers = new StragglerDetector(metrics, conf.getStragglerPercentile(),
+                            conf.getStragglerMinSamples(), conf.getStragglerCapacity());
+                    long expiry = conf.getStragglerExpiry();
+                    scheduler.scheduleWithFixedDelay(logged("straggler scan", () -> {
+                        long now = System.currentTimeMillis();
+                        stragglers.scan(timelines.values(), now);
+                        stragglers.expire(now, expiry);
+                    }), conf.getStragglerScanInterval(), conf.getStragglerScanInterval(), TimeUnit.MILLISECONDS);
+                }
+            }
+            if (conf.isDimensionEnabled()) {
+                dimensions = new StatsDimensionStore(conf.getDimensionCapacity());
+                scheduler.scheduleWithFixedDelay(logged("dimension flush", this::flushDimensions),
+                        conf.getDimensionFlushInterval(), conf.getDimensionFlushInterval(), TimeUnit.MILLISECONDS);
+            }
+            if (conf.isRollupEnabled()) {
+                rollups = new StatsRollupStore(conf.getRollupSize(), conf.getRollupWidth());
+                long now = System.currentTimeMillis();
+                nextRollup = rollups.getStart(now);
+                // a second after each bucket end, so that in-flight jobs are accounted
+                scheduler.scheduleAtFixedRate(logged("rollup flush", () -> flushRollups(false)),
+                        nextRollup + conf.getRollupWidth() - now + 1000,
+                        conf.getRollupWidth(), TimeUnit.MILLISECONDS);
+            }
+            if (!conf.getExportDir().isEmpty()) {
+                export = new JobRecordSink(Paths.get(conf.getExportDir()), conf.getExportFileSize(),
+                        conf.getExportQueueSize(), conf.getExportFlushInterval());
+                export.start();
+                logger.info("Finished jobs are exported to {}", conf.getExportDir());
+            }
+            if (conf.isAsyncEnabled()) {
+                logger.info("Workflow stats are written asynchronously (batch size: {}, flush interval: {} ms)",
+                        conf.getAsyncBatchSize(), conf.getAsyncFlushInterval());
+                List<StatsJournal.PendingJob> pending = new ArrayList<>();
+                if (!conf.getJournalFile().isEmpty()) {
+                    journal = StatsJournal.open(Paths.get(conf.getJournalFile()), conf.getJournalSize());
+                    int replayed = journal.replay(store, pending);
+                    if (replayed > 0 || !pending.isEmpty()) {
+                        logger.info("Replayed {} stats deltas and {} finished jobs from {}",
+                                replayed, pending.size(), conf.getJournalFile());
+                    }
+                }
+                asyncWriter = new AsyncStatsWriter(this, guard, metrics, store, journal,
+                        conf.getAsyncQueueSize(), conf.getAsyncBatchSize(), conf.getAsyncFlushInterval());
+                if (journal != null) {
+                    asyncWriter.resubmit(pending, journal.getLastID());
+                }
+                asyncWriter.start();
+            } else {
+                scheduler.scheduleWithFixedDelay(logged("backlog flush", guard::flushBacklog),
+                        conf.getBacklogFlushInterval(), conf.getBacklogFlushInterval(), TimeUnit.MILLISECONDS);
+            }
+
+        } catch (IOException ex) {
+            logger.error("Error", ex);
+            throw new GaswException(ex);
+        }
+    }
+
     @Override
     public void jobSubmitted(Job job) throws GaswException {
+        if (timelines != null) {
+            timelines.track(job);
+        }
     }
 
     @Override
-    public synchronized void jobFinished(GaswOutput gaswOutput) throws GaswException {
+    public void jobFinished(GaswOutput gaswOutput) throws GaswException {
 
-        try {
-            List<Job> jobs = StatsPluginDAOFactory.getInstance().getJobDAO().getByFilenameAndExitCode(
-                    gaswOutput.getJobID().replace(".jdl", ""), gaswOutput.getExitCode());
-            Job job = selectLastjob(jobs);
-            Stats stats = statsDAO.get(job.getSimulationID());
-
-            boolean exists = true;
-            if (stats == null) {
-                stats = new Stats(job.getSimulationID());
-                exists = false;
-            }
-
-            parseStatus(job, stats);
+        if (asyncWriter != null) {
+            asyncWriter.submit(gaswOutput);
+        } else {
+            updateStats(gaswOutput);
+        }
+    }
 
-            if (exists) {
-                statsDAO.update(stats);
-            } else {
-                statsDAO.add(stats);
-            }
+    private void updateStats(GaswOutput gaswOutput) throws GaswException {
 
+        JobTimeline job;
+        try {
+            job = resolveJob(gaswOutput);
         } catch (DAOException ex) {
+            metrics.daoError();
             throw new GaswException(ex);
-        } catch (WorkflowsDBDAOException ex) {
-            logger.error("Error", ex);
-            throw new GaswException(ex);
         }
+        if (!firstCompletion(job)) {
+            return;
+        }
+        observe(job);
+
+        // kept locally if the database is slow or unavailable
+        StatsCounters counters = new StatsCounters();
+        counters.record(job);
+        guard.write(job.simulationID(), counters);
     }
 
     @Override
     public void jobStatusChanged(Job job) throws GaswException {
+        if (timelines != null) {
+            timelines.track(job);
+        }
     }
 
     @Override
     public void jobMinorStatusReported(JobMinorStatus jobMinorStatus) throws GaswException {
+        if (timelines != null && jobMinorStatus.getJob() != null) {
+            timelines.refresh(jobMinorStatus.getJob());
+        }
     }
 
     @Override
     public void terminate() {
-        workflowsDBDAOFactory.close();
+        if (asyncWriter != null) {
+            asyncWriter.shutdown();
+        }
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (asyncWriter == null) {
+            guard.flushBacklog();
+        }
+        guard.shutdown();
+        if (histograms != null) {
+            flushHistograms();
+        }
+        if (dimensions != null) {
+            flushDimensions();
+        }
+        if (rollups != null) {
+            flushRollups(true);
+        }
+        if (export != null) {
+            export.close();
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException ex) {
+                logger.error("Error closing the stats journal", ex);
+            }
+        }
+        metrics.unregister();
+        if (workflowsDBDAOFactory != null) {
+            workflowsDBDAOFactory.close();
+        }
     }
 
-    private Job selectLastjob(List<Job> jobs) throws GaswException {
-        if (jobs.size() == 1) {
-            return jobs.get(0);
-        } else if (jobs.stream().anyMatch(j -> j.getEnd() == null)) {
-            logger.error("Cannot select job for {} because one of them " +
-                    "does not have an end date", jobs.get(0).getSimulationID());
-            throw new GaswException("Cannot select job for " +
-                    jobs.get(0).getSimulationID() + " because one of them " +
-                    "does not have an end date");
-        } else {
-            return jobs.stream().max(Comparator.comparing(Job::getEnd)).get();
+    /**
+     * Feeds a resolved finished job to the in-memory aggregations other than
+     * the Stats row.
+     *
+     * @param job timeline of the finished job
+     */
+    void observe(JobTimeline job) {
+
+        StatsCategory category = StatsCounters.classify(job);
+        if (category == null && StatsCategory.classify(job.status(), job.exitCode()) != null) {
+            logger.warn("Job {} of {} lacks a date needed by its {} status, it is not accounted",
+                    job.id(), job.simulationID(), job.status());
+        }
+        if (metrics.isEnabled()) {
+            metrics.completed(category);
+        }
+        if (histograms != null) {
+            histograms.record(job);
+        }
+        if (dimensions != null) {
+            dimensions.record(job);
+        }
+        if (stragglers != null) {
+            stragglers.record(job);
+        }
+        if (rollups != null) {
+            rollups.record(job);
+        }
+        if (export != null) {
+            export.offer(job);
         }
     }
 
     /**
-     * Parses the status of the job and sets its times.
+     * Gets the straggler detector, to register callbacks.
      *
-     * @param job Job object
-     * @param stats Stats object
+     * @return the detector, or null if it is disabled
      */
-    private void parseStatus(Job job, Stats stats) {
-
-        switch (job.getStatus()) {
-
-            case COMPLETED:
-                if (job.getExitCode() == GaswExitCode.SUCCESS.getExitCode()) {
-                    stats.setCompleted(stats.getCompleted() + 1);
-                    stats.setCompletedWaitingTime(stats.getCompletedWaitingTime()
-                            + (job.getDownload().getTime() - job.getQueued().getTime()) / 1000);
-                    stats.setCompletedInputTime(stats.getCompletedInputTime()
-                            + (job.getRunning().getTime() - job.getDownload().getTime()) / 1000);
-                    stats.setCompletedExecutionTime(stats.getCompletedExecutionTime()
-                            + (job.getUpload().getTime() - job.getRunning().getTime()) / 1000);
-                    stats.setCompletedOutputTime(stats.getCompletedOutputTime()
-                            + (job.getEnd().getTime() - job.getUpload().getTime()) / 1000);
-                }
-                break;
-
-            case CANCELLED:
-            case DELETED:
-                stats.setCancelled(stats.getCancelled() + 1);
-                if (job.getQueued() != null) {
-                    stats.setCancelledWaitingTime(stats.getCancelledWaitingTime()
-                            + getTime(job.getQueued(), job.getDownload(), job.getEnd()));
-                }
-                if (job.getDownload() != null) {
-                    stats.setCancelledInputTime(stats.getCancelledInputTime()
-                            + getTime(job.getDownload(), job.getRunning(), job.getEnd()));
-                }
-                if (job.getRunning() != null) {
-                    stats.setCancelledExecutionTime(stats.getCancelledExecutionTime()
-                            + getTime(job.getRunning(), job.getUpload(), job.getEnd()));
-                }
-                if (job.getUpload() != null) {
-                    stats.setCancelledOutputTime(stats.getCancelledOutputTime()
-                            + (job.getEnd().getTime() - job.getUpload().getTime()) / 1000);
-                }
-                break;
+    public StragglerDetector getStragglerDetector() {
+        return stragglers;
+    }
 
-            case STALLED:
-                stats.setFailedStalled(stats.getFailedStalled() + 1);
-                if (job.getQueued() != null) {
-                    stats.setFailedStalledWaitingTime(stats.getFailedStalledWaitingTime()
-                            + getTime(job.getQueued(), job.getDownload(), job.getEnd()));
-                }
-                if (job.getDownload() != null) {
-                    stats.setFailedStalledInputTime(stats.getFailedStalledInputTime()
-                            + getTime(job.getDownload(), job.getRunning(), job.getEnd()));
+    /**
+     * Gets the rolling time buckets of the workflow stats.
+     *
+     * @return the buckets, or null if they are disabled
+     */
+    public StatsRollupStore getRollups() {
+        return rollups;
+    }
+
+    /**
+     * Wraps a scheduled task so that an unexpected exception is logged
+     * instead of silently cancelling its next runs.
+     */
+    private static Runnable logged(String task, Runnable runnable) {
+
+        return () -> {
+            try {
+                runnable.run();
+            } catch (RuntimeException ex) {
+                logger.error("Stats {} failed", task, ex);
+            }
+        };
+    }
+
+    private void flushHistograms() {
+
+        List<PhaseHistogram> drained = histograms.drain();
+        if (drained.isEmpty()) {
+            return;
+        }
+        try {
+            StatsPluginDAOFactory.getInstance().getHistogramDAO().add(drained);
+        } catch (DAOException | RuntimeException ex) {
+            logger.error("Unable to persist {} phase histograms", drained.size(), ex);
+            histograms.restore(drained);
+        }
+    }
+
+    private void flushDimensions() {
+
+        List<DimensionStats> drained = dimensions.drain();
+        if (drained.isEmpty()) {
+            return;
+        }
+        try {
+            StatsPluginDAOFactory.getInstance().getDimensionDAO().add(drained);
+        } catch (DAOException | RuntimeException ex) {
+            logger.error("Unable to persist {} command and site stats", drained.size(), ex);
+            dimensions.restore(drained);
+        }
+    }
+
+    /**
+     * Persists the buckets ended since the last flush, one transaction per
+     * bucket. A bucket that fails is retried on the next flush while it is
+     * still in memory.
+     *
+     * @param current whether to persist the current bucket as well
+     */
+    private void flushRollups(boolean current) {
+
+        long now = System.currentTimeMillis();
+        long end = rollups.getStart(now) + (current ? rollups.getWidth() : 0);
+        // older buckets are no longer in the rings
+        nextRollup = Math.max(nextRollup, end - rollups.getSize() * rollups.getWidth());
+        try {
+            for (; nextRollup < end; nextRollup += rollups.getWidth()) {
+                List<StatsBucket> buckets = rollups.getBuckets(nextRollup);
+                if (!buckets.isEmpty()) {
+                    StatsPluginDAOFactory.getInstance().getBucketDAO().add(buckets);
                 }
-                if (job.getRunning() != null) {
-                    stats.setFailedStalledExecutionTime(stats.getFailedStalledExecutionTime()
-                            + getTime(job.getRunning(), job.getUpload(), job.getEnd()));
+            }
+        } catch (DAOException | RuntimeException ex) {
+            logger.error("Unable to persist the stats buckets starting at {}", nextRollup, ex);
+        }
+        rollups.expire(now);
+    }
+
+    /**
+     * Gets the timeline of the finished job from the in-memory timelines,
+     * falling back to the last job in the database matching the output file
+     * name and exit code.
+     *
+     * @param gaswOutput output of the finished job
+     * @return the timeline of the matching job
+     */
+    JobTimeline resolveJob(GaswOutput gaswOutput) throws DAOException, GaswException {
+
+        String fileName = gaswOutput.getJobID().replace(".jdl", "");
+        if (timelines != null) {
+            JobTimeline timeline = timelines.consume(fileName, gaswOutput.getExitCode().getExitCode());
+            if (timeline != null) {
+                metrics.timelineHit();
+                return timeline;
+            }
+            metrics.timelineMiss();
+        }
+        long start = metrics.start();
+        List<JobTimeline> jobs = getJobDAO().getByFilenameAndExitCode(fileName, gaswOutput.getExitCode());
+        metrics.jobLookup(start);
+        try {
+            return selectLastjob(fileName, jobs);
+        } catch (GaswException ex) {
+            metrics.selectLastjobFailure();
+            throw ex;
+        }
+    }
+
+    /**
+     * Batch variant of {@link #resolveJob}: the cache misses are resolved
+     * with one query per exit code. Jobs that cannot be resolved are logged
+     * and skipped. Completions already processed are not filtered, see
+     * {@link #firstCompletion}; if a query fails, the timelines found in
+     * the cache are consumed and a retry resolves them from the database.
+     *
+     * @param gaswOutputs outputs of the finished jobs
+     * @return the timelines of the matching jobs
+     */
+    List<JobTimeline> resolveJobs(List<GaswOutput> gaswOutputs) throws DAOException {
+
+        List<JobTimeline> resolved = new ArrayList<>(gaswOutputs.size());
+        Map<GaswExitCode, List<String>> misses = new EnumMap<>(GaswExitCode.class);
+
+        for (GaswOutput gaswOutput : gaswOutputs) {
+            String fileName = gaswOutput.getJobID().replace(".jdl", "");
+            JobTimeline timeline = timelines != null
+                    ? timelines.consume(fileName, gaswOutput.getExitCode().getExitCode())
+                    : null;
+            if (timeline != null) {
+                metrics.timelineHit();
+                resolved.add(timeline);
+            } else {
+                if (timelines != null) {
+                    metrics.timelineMiss();
                 }
-                if (job.getUpload() != null) {
-                    stats.setFailedStalledOutputTime(stats.getFailedStalledOutputTime()
-                            + (job.getEnd().getTime() - job.getUpload().getTime()) / 1000);
+                misses.computeIfAbsent(gaswOutput.getExitCode(), k -> new ArrayList<>()).add(fileName);
+            }
+        }
+
+        for (Map.Entry<GaswExitCode, List<String>> entry : misses.entrySet()) {
+            long start = metrics.start();
+            Map<String, List<JobTimeline>> jobs = getJobDAO()
+                    .getByFilenamesAndExitCode(entry.getValue(), entry.getKey());
+            metrics.jobLookup(start);
+            for (String fileName : entry.getValue()) {
+                try {
+                    resolved.add(selectLastjob(fileName, jobs.getOrDefault(fileName, List.of())));
+                } catch (GaswException ex) {
+                    metrics.selectLastjobFailure();
+                    logger.error("Unable to process finished job {}", fileName, ex);
                 }
-                break;
-
-            case ERROR:
-                // 2* : config errors
-                // 3* : output errors
-                // 4* : inputs errors
-                // 5* : execution errors
-                // 6* : shanoir token errors
-
-                Integer gaswExitCode = job.getExitCode();
-                if (gaswExitCode < 0) {gaswExitCode = - gaswExitCode; }
-                Integer firstDigit = Integer.parseInt(gaswExitCode.toString().substring(0,1));
-
-                switch (firstDigit) {
-                    // Inputs Error
-                    case 2,4,6 -> {
-                        stats.setFailedInput(stats.getFailedInput() + 1);
-                        if (job.getQueued() != null) {
-                            stats.setFailedInputWaitingTime(stats.getFailedInputWaitingTime()
-                                    + getTime(job.getQueued(), job.getDownload(), job.getEnd()));
-                        }
-                        if (job.getDownload() != null) {
-                            stats.setFailedInputInputTime(stats.getFailedInputInputTime()
-                                    + getTime(job.getDownload(), job.getRunning(), job.getEnd()));
-                        }
-                        if (job.getRunning() != null) {
-                            stats.setFailedInputExecutionTime(stats.getFailedInputExecutionTime()
-                                    + getTime(job.getRunning(), job.getUpload(), job.getEnd()));
-                        }
-                        if (job.getUpload() != null) {
-                            stats.setFailedInputOutputTime(stats.getFailedInputOutputTime()
-                                    + (job.getEnd().getTime() - job.getUpload().getTime()) / 1000);
-                        }
-                    }
+            }
+        }
+        return resolved;
+    }
 
-                    // Outputs Error
-                    case 3 -> {
-                        stats.setFailedOutput(stats.getFailedOutput() + 1);
-                        if (job.getQueued() != null) {
-                            stats.setFailedOutputWaitingTime(stats.getFailedOutputWaitingTime()
-                                    + getTime(job.getQueued(), job.getDownload(), job.getEnd()));
-                        }
-                        if (job.getDownload() != null) {
-                            stats.setFailedOutputInputTime(stats.getFailedOutputInputTime()
-                                    + getTime(job.getDownload(), job.getRunning(), job.getEnd()));
-                        }
-                        if (job.getRunning() != null) {
-                            stats.setFailedOutputExecutionTime(stats.getFailedOutputExecutionTime()
-                                    + getTime(job.getRunning(), job.getUpload(), job.getEnd()));
-                        }
-                        if (job.getUpload() != null) {
-                            stats.setFailedOutputOutputTime(stats.getFailedOutputOutputTime()
-                                    + (job.getEnd().getTime() - job.getUpload().getTime()) / 1000);
-                        }
-                    }
+    /**
+     * Marks a job as processed, unless deduplication is disabled.
+     *
+     * @return false if its completion was already accounted
+     */
+    boolean firstCompletion(JobTimeline job) {
 
-                    // Application Error
-                    case 5 -> {
-                        stats.setFailedApplication(stats.getFailedApplication() + 1);
-                        if (job.getQueued() != null) {
-                            stats.setFailedApplicationWaitingTime(stats.getFailedApplicationWaitingTime()
-                                    + getTime(job.getQueued(), job.getDownload(), job.getEnd()));
-                        }
-                        if (job.getDownload() != null) {
-                            stats.setFailedApplicationInputTime(stats.getFailedApplicationInputTime()
-                                    + getTime(job.getDownload(), job.getRunning(), job.getEnd()));
-                        }
-                        if (job.getRunning() != null) {
-                            stats.setFailedApplicationExecutionTime(stats.getFailedApplicationExecutionTime()
-                                    + getTime(job.getRunning(), job.getUpload(), job.getEnd()));
-                        }
-                        if (job.getUpload() != null) {
-                            stats.setFailedApplicationOutputTime(stats.getFailedApplicationOutputTime()
-                                    + (job.getEnd().getTime() - job.getUpload().getTime()) / 1000);
-                        }
-                    }
-                }
+        if (processedJobs == null || processedJobs.add(job.simulationID(), job.id())) {
+            return true;
         }
+        metrics.duplicate();
+        logger.debug("Ignoring duplicate completion of job {} ({})", job.id(), job.fileName());
+        return false;
     }
 
-    private long getTime(Date initialTime, Date endTime, Date finalTime) {
+    private StatsJobDAO getJobDAO() throws DAOException {
+        return jobDAO != null ? jobDAO : StatsPluginDAOFactory.getInstance().getJobDAO();
+    }
 
-        return ((endTime != null ? endTime.getTime() : finalTime.getTime())
-                - initialTime.getTime()) / 1000;
+    /**
+     * Selects the last finished job among the jobs of a file. Jobs without an
+     * end date are resubmissions still running and are ignored.
+     */
+    static JobTimeline selectLastjob(String fileName, List<JobTimeline> jobs) throws GaswException {
+        if (jobs.isEmpty()) {
+            throw new GaswException("Cannot find job " + fileName);
+        } else if (jobs.size() == 1) {
+            return jobs.get(0);
+        }
+        JobTimeline last = null;
+        for (JobTimeline job : jobs) {
+            if (job.end() != JobTimeline.NONE && (last == null || job.end() > last.end())) {
+                last = job;
+            }
+        }
+        if (last == null) {
+            logger.error("Cannot select job for {} because none of them " +
+                    "has an end date", jobs.get(0).simulationID());
+            throw new GaswException("Cannot select job for " +
+                    jobs.get(0).simulationID() + " because none of them " +
+                    "has an end date");
+        }
+        return last;
     }
 }
@@ -0,0 +1,192 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-memory histogram of non-negative values with log-linear buckets,
+ * in the spirit of HdrHistogram: values below {@link #SUB_BUCKETS} are
+ * exact, larger ones fall in one of {@link #SUB_BUCKETS} linear buckets per
+ * power of two, i.e. within 1/{@link #SUB_BUCKETS} of their true value.
+ * Values above {@link #MAX_VALUE} are clamped. Not thread-safe.
+ */
+public class LogHistogram {
+
+    public final static int SUB_BUCKET_BITS = 3;
+    public final static int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    public final static int MAX_EXPONENT = 24;
+    public final static long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+    public final static int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+
+    private static final byte FORMAT = 1;
+
+    private final long[] counts;
+    private long totalCount;
+
+    public LogHistogram() {
+        this.counts = new long[BUCKETS];
+    }
+
+    public void record(long value) {
+        record(value, 1);
+    }
+
+    public void record(long value, long count) {
+        counts[bucket(value)] += count;
+        totalCount += count;
+    }
+
+    public void merge(LogHistogram other) {
+
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getCount(int bucket) {
+        return counts[bucket];
+    }
+
+    /**
+     * Gets the value below which the given percentage of the recorded
+     * values fall, as the highest value of its bucket.
+     *
+     * @param percentile percentile, between 0 and 100
+     * @return the value, 0 if the histogram is empty
+     */
+    public long getValueAtPercentile(double percentile) {
+
+        if (totalCount == 0) {
+            return 0;
+        }
+        // multiplied first, so that whole percentiles of round counts are exact
+        long rank = Math.max(1, (long) Math.ceil(percentile * totalCount / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return highestValue(i);
+            }
+        }
+        return MAX_VALUE;
+    }
+
+    public static int bucket(long value) {
+
+        if (value < SUB_BUCKETS) {
+            return value < 0 ? 0 : (int) value;
+        }
+        if (value > MAX_VALUE) {
+            value = MAX_VALUE;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    public static long highestValue(int bucket) {
+
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long sub = bucket % SUB_BUCKETS;
+        return ((SUB_BUCKETS + sub + 1) << shift) - 1;
+    }
+
+    /**
+     * Serializes the non-empty buckets as variable-length pairs of bucket
+     * offset and count.
+     */
+    public byte[] toByteArray() {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(FORMAT);
+        int previous = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (counts[i] != 0) {
+                writeVarLong(out, i - previous);
+                writeVarLong(out, counts[i]);
+                previous = i;
+            }
+        }
+        return out.toByteArray();
+    }
+
+    public static LogHistogram fromByteArray(byte[] data) {
+
+        LogHistogram histogram = new LogHistogram();
+        ByteBuffer in = ByteBuffer.wrap(data);
+        if (!in.hasRemaining() || in.get() != FORMAT) {
+            throw new IllegalArgumentException("Unsupported histogram format");
+        }
+        int bucket = 0;
+        while (in.hasRemaining()) {
+            bucket += (int) readVarLong(in);
+            long count = readVarLong(in);
+            histogram.counts[bucket] += count;
+            histogram.totalCount += count;
+        }
+        return histogram;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(ByteBuffer in) {
+
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
@@ -0,0 +1,277 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation;
+
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Fixed-size store of the stats counters of many simulations, laid out as
+ * one primitive column per counter slot and indexed by an interned
+ * simulation index. Recording a job allocates nothing once its simulation
+ * is interned; counters only become {@link StatsCounters} when drained.
+ */
+public class StatsAccumulatorStore {
+
+    private final int capacity;
+    private final AtomicLongArray[] columns;
+    private final AtomicIntegerArray touched;
+    private final AtomicIntegerArray pins;
+    private final AtomicReferenceArray<String> simulationIDs;
+    private final ConcurrentMap<String, Integer> indexes;
+    private final ConcurrentLinkedQueue<Integer> free;
+
+    public StatsAccumulatorStore(int capacity) {
+
+        this.capacity = capacity;
+        this.columns = new AtomicLongArray[StatsCounters.SLOTS];
+        for (int slot = 0; slot < columns.length; slot++) {
+            columns[slot] = new AtomicLongArray(capacity);
+        }
+        this.touched = new AtomicIntegerArray(capacity);
+        this.pins = new AtomicIntegerArray(capacity);
+        this.simulationIDs = new AtomicReferenceArray<>(capacity);
+        this.indexes = new ConcurrentHashMap<>();
+        this.free = new ConcurrentLinkedQueue<>();
+        for (int i = 0; i < capacity; i++) {
+            free.add(i);
+        }
+    }
+
+    /**
+     * Classifies a finished job and adds it to its simulation's counters.
+     *
+     * @param simulationID simulation ID
+     * @param job job timeline
+     * @return false if the store is full and the job was not recorded
+     */
+    public boolean record(String simulationID, JobTimeline job) {
+
+        int index = pin(simulationID);
+        if (index < 0) {
+            return false;
+        }
+        try {
+            StatsCategory category = StatsCounters.classify(job);
+            if (category != null) {
+                int slot = StatsCounters.countSlot(category);
+                columns[slot].incrementAndGet(index);
+                for (int phase = 0; phase < StatsCounters.PHASES; phase++) {
+                    long time = StatsCounters.phaseTime(job, category, phase);
+                    if (time != 0) {
+                        columns[slot + 1 + phase].addAndGet(index, time);
+                    }
+                }
+            }
+            touched.set(index, 1);
+        } finally {
+            pins.decrementAndGet(index);
+        }
+        return true;
+    }
+
+    /**
+     * Adds counters to a simulation, e.g. to put back a delta that could not
+     * be persisted.
+     *
+     * @return false if the store is full and the counters were not added
+     */
+    public boolean add(String simulationID, StatsCounters counters) {
+
+        int index = pin(simulationID);
+        if (index < 0) {
+            return false;
+        }
+        try {
+            for (int slot = 0; slot < columns.length; slot++) {
+                long value = counters.get(slot);
+                if (value != 0) {
+                    columns[slot].addAndGet(index, value);
+                }
+            }
+            touched.set(index, 1);
+        } finally {
+            pins.decrementAndGet(index);
+        }
+        return true;
+    }
+
+    /**
+     * Reads the counters of a simulation without resetting them.
+     *
+     * @return the counters, or null if the simulation is not in the store
+     */
+    public StatsCounters get(String simulationID) {
+
+        int index = pinExisting(simulationID);
+        if (index < 0) {
+            return null;
+        }
+        try {
+            StatsCounters counters = new StatsCounters();
+            for (int slot = 0; slot < columns.length; slot++) {
+                counters.add(slot, columns[slot].get(index));
+            }
+            return counters;
+        } finally {
+            pins.decrementAndGet(index);
+        }
+    }
+
+    /**
+     * Takes the counters recorded for a simulation since the last drain.
+     *
+     * @return the counters, or null if nothing was recorded since then
+     */
+    public StatsCounters drain(String simulationID) {
+
+        int index = pinExisting(simulationID);
+        if (index < 0) {
+            return null;
+        }
+        try {
+            return drain(index);
+        } finally {
+            pins.decrementAndGet(index);
+        }
+    }
+
+    /**
+     * Removes a simulation from the store, making its index reusable.
+     *
+     * @return the counters recorded since the last drain, or null if none
+     */
+    public StatsCounters release(String simulationID) {
+
+        Integer index = indexes.remove(simulationID);
+        if (index == null) {
+            return null;
+        }
+        simulationIDs.set(index, null);
+        while (pins.get(index) != 0) {
+            Thread.onSpinWait();
+        }
+        StatsCounters counters = drain(index);
+        free.offer(index);
+        return counters;
+    }
+
+    public List<String> getSimulationIDs() {
+        return new ArrayList<>(indexes.keySet());
+    }
+
+    public int size() {
+        return indexes.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    private StatsCounters drain(int index) {
+
+        if (touched.getAndSet(index, 0) == 0) {
+            return null;
+        }
+        StatsCounters counters = new StatsCounters();
+        for (int slot = 0; slot < columns.length; slot++) {
+            counters.add(slot, columns[slot].getAndSet(index, 0));
+        }
+        return counters;
+    }
+
+    /**
+     * Gets the index of a simulation, interning it if needed, and pins it so
+     * that it cannot be released until the caller unpins it.
+     *
+     * @return the pinned index, or -1 if the store is full
+     */
+    private int pin(String simulationID) {
+
+        while (true) {
+            Integer index = indexes.get(simulationID);
+            if (index == null) {
+                index = indexes.computeIfAbsent(simulationID, this::intern);
+                if (index == null) {
+                    return -1;
+                }
+            }
+            pins.incrementAndGet(index);
+            if (simulationID.equals(simulationIDs.get(index))) {
+                return index;
+            }
+            // released concurrently, retry with a new index
+            pins.decrementAndGet(index);
+        }
+    }
+
+    /**
+     * Pins the index of a simulation without interning it, so that a
+     * concurrent release cannot hand the index to another simulation while
+     * the caller reads it.
+     *
+     * @return the pinned index, or -1 if the simulation is not in the store
+     */
+    private int pinExisting(String simulationID) {
+
+        Integer index = indexes.get(simulationID);
+        if (index == null) {
+            return -1;
+        }
+        pins.incrementAndGet(index);
+        if (simulationID.equals(simulationIDs.get(index))) {
+            return index;
+        }
+        // released concurrently
+        pins.decrementAndGet(index);
+        return -1;
+    }
+
+    private Integer intern(String simulationID) {
+
+        Integer index = free.poll();
+        if (index != null) {
+            simulationIDs.set(index, simulationID);
+        }
+        return index;
+    }
+}
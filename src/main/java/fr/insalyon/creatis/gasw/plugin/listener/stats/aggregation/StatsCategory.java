@@ -0,0 +1,124 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation;
+
+import fr.insalyon.creatis.gasw.GaswExitCode;
+import fr.insalyon.creatis.gasw.execution.GaswStatus;
+
+/**
+ * Categories of the workflow stats. A finished job is classified from its
+ * status and, for errors, from the first digit of its exit code.
+ */
+public enum StatsCategory {
+
+    COMPLETED(false),
+    CANCELLED(true),
+    FAILED_STALLED(true),
+    FAILED_INPUT(true),
+    FAILED_OUTPUT(true),
+    FAILED_APPLICATION(true);
+
+    private static final StatsCategory[] BY_STATUS = new StatsCategory[GaswStatus.values().length];
+    private static final StatsCategory[] BY_ERROR_FAMILY = new StatsCategory[10];
+
+    static {
+        BY_STATUS[GaswStatus.COMPLETED.ordinal()] = COMPLETED;
+        BY_STATUS[GaswStatus.CANCELLED.ordinal()] = CANCELLED;
+        BY_STATUS[GaswStatus.DELETED.ordinal()] = CANCELLED;
+        BY_STATUS[GaswStatus.STALLED.ordinal()] = FAILED_STALLED;
+
+        // 2* : config errors
+        // 3* : output errors
+        // 4* : inputs errors
+        // 5* : execution errors
+        // 6* : shanoir token errors
+        BY_ERROR_FAMILY[2] = FAILED_INPUT;
+        BY_ERROR_FAMILY[3] = FAILED_OUTPUT;
+        BY_ERROR_FAMILY[4] = FAILED_INPUT;
+        BY_ERROR_FAMILY[5] = FAILED_APPLICATION;
+        BY_ERROR_FAMILY[6] = FAILED_INPUT;
+    }
+
+    private final boolean partial;
+
+    private StatsCategory(boolean partial) {
+        this.partial = partial;
+    }
+
+    /**
+     * Whether jobs of this category may stop before reaching every phase.
+     * Only the reached phases are then accounted, up to the end date.
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * Classifies a finished job. An error whose exit code is
+     * Integer.MIN_VALUE, which has no first digit once negated, is not
+     * accounted; the former parser failed on it with a
+     * NumberFormatException.
+     *
+     * @param status job status
+     * @param exitCode job exit code
+     * @return the category, or null if the job is not accounted
+     */
+    public static StatsCategory classify(GaswStatus status, int exitCode) {
+
+        if (status == null) {
+            return null;
+        }
+        if (status == GaswStatus.ERROR) {
+            return BY_ERROR_FAMILY[firstDigit(exitCode)];
+        }
+        StatsCategory category = BY_STATUS[status.ordinal()];
+        if (category == COMPLETED && exitCode != GaswExitCode.SUCCESS.getExitCode()) {
+            return null;
+        }
+        return category;
+    }
+
+    private static int firstDigit(int exitCode) {
+
+        int value = Math.abs(exitCode);
+        if (value < 0) {
+            // Integer.MIN_VALUE
+            return 0;
+        }
+        while (value >= 10) {
+            value /= 10;
+        }
+        return value;
+    }
+}
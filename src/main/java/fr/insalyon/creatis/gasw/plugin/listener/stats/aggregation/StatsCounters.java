@@ -0,0 +1,312 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation;
+
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.bean.Stats;
+
+import java.util.Arrays;
+
+/**
+ * Flat counters of the workflow stats: for each category, one slot for the
+ * number of jobs followed by one slot per phase for the summed times, in
+ * seconds.
+ */
+public class StatsCounters {
+
+    public final static int PHASES = StatsPhase.values().length;
+    public final static int SLOTS_PER_CATEGORY = PHASES + 1;
+    public final static int SLOTS = StatsCategory.values().length * SLOTS_PER_CATEGORY;
+
+    private final long[] values;
+
+    public StatsCounters() {
+        this.values = new long[SLOTS];
+    }
+
+    public static int countSlot(StatsCategory category) {
+        return category.ordinal() * SLOTS_PER_CATEGORY;
+    }
+
+    public static int timeSlot(StatsCategory category, StatsPhase phase) {
+        return category.ordinal() * SLOTS_PER_CATEGORY + 1 + phase.ordinal();
+    }
+
+    /**
+     * Classifies a finished job and adds it to the counters.
+     *
+     * @param job job timeline
+     * @return the category of the job, or null if it is not accounted
+     */
+    public StatsCategory record(JobTimeline job) {
+
+        StatsCategory category = classify(job);
+        if (category == null) {
+            return null;
+        }
+        int slot = countSlot(category);
+        values[slot]++;
+        for (int phase = 0; phase < PHASES; phase++) {
+            values[slot + 1 + phase] += phaseTime(job, category, phase);
+        }
+        return category;
+    }
+
+    /**
+     * Classifies a finished job like {@link StatsCategory#classify}, but
+     * also rejects the jobs lacking a date their category needs: the end
+     * date, and every phase start for complete categories. Their times
+     * cannot be computed, so they are not accounted.
+     *
+     * @param job job timeline
+     * @return the category of the job, or null if it is not accounted
+     */
+    public static StatsCategory classify(JobTimeline job) {
+
+        StatsCategory category = StatsCategory.classify(job.status(), job.exitCode());
+        if (category == null || job.end() == JobTimeline.NONE) {
+            return null;
+        }
+        if (!category.isPartial()) {
+            for (int phase = 0; phase < PHASES; phase++) {
+                if (phaseStart(job, phase) == JobTimeline.NONE) {
+                    return null;
+                }
+            }
+        }
+        return category;
+    }
+
+    /**
+     * Computes the time, in seconds, spent by a job in a phase. Jobs of a
+     * partial category that did not reach the phase account for 0, and a
+     * phase they did not leave ends at the job end date.
+     *
+     * @param job job timeline
+     * @param category category of the job
+     * @param phase ordinal of the phase
+     * @return the time spent in the phase
+     */
+    public static long phaseTime(JobTimeline job, StatsCategory category, int phase) {
+
+        long start = phaseStart(job, phase);
+        long next = phase < PHASES - 1 ? phaseStart(job, phase + 1) : job.end();
+        if (!category.isPartial()) {
+            return (next - start) / 1000;
+        }
+        if (start == JobTimeline.NONE) {
+            return 0;
+        }
+        return ((next != JobTimeline.NONE ? next : job.end()) - start) / 1000;
+    }
+
+    /**
+     * Whether a job is accounted in a phase: always for complete categories,
+     * only if it entered the phase for partial ones.
+     */
+    public static boolean hasPhase(JobTimeline job, StatsCategory category, int phase) {
+        return !category.isPartial() || phaseStart(job, phase) != JobTimeline.NONE;
+    }
+
+    private static long phaseStart(JobTimeline job, int phase) {
+
+        switch (phase) {
+            case 0:
+                return job.queued();
+            case 1:
+                return job.download();
+            case 2:
+                return job.running();
+            default:
+                return job.upload();
+        }
+    }
+
+    public long get(int slot) {
+        return values[slot];
+    }
+
+    public long getCount(StatsCategory category) {
+        return values[countSlot(category)];
+    }
+
+    public long getTime(StatsCategory category, StatsPhase phase) {
+        return values[timeSlot(category, phase)];
+    }
+
+    public void add(int slot, long value) {
+        values[slot] += value;
+    }
+
+    public void add(StatsCounters other) {
+
+        for (int slot = 0; slot < SLOTS; slot++) {
+            values[slot] += other.values[slot];
+        }
+    }
+
+    public boolean isEmpty() {
+
+        for (long value : values) {
+            if (value != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(values, 0);
+    }
+
+    /**
+     * Adds the counters to a Stats object.
+     *
+     * @param stats Stats object
+     */
+    public void addTo(Stats stats) {
+
+        stats.setCompleted(stats.getCompleted() + (int) getCount(StatsCategory.COMPLETED));
+        stats.setCompletedWaitingTime(stats.getCompletedWaitingTime() + getTime(StatsCategory.COMPLETED, StatsPhase.WAITING));
+        stats.setCompletedInputTime(stats.getCompletedInputTime() + getTime(StatsCategory.COMPLETED, StatsPhase.INPUT));
+        stats.setCompletedExecutionTime(stats.getCompletedExecutionTime() + getTime(StatsCategory.COMPLETED, StatsPhase.EXECUTION));
+        stats.setCompletedOutputTime(stats.getCompletedOutputTime() + getTime(StatsCategory.COMPLETED, StatsPhase.OUTPUT));
+        stats.setCancelled(stats.getCancelled() + (int) getCount(StatsCategory.CANCELLED));
+        stats.setCancelledWaitingTime(stats.getCancelledWaitingTime() + getTime(StatsCategory.CANCELLED, StatsPhase.WAITING));
+        stats.setCancelledInputTime(stats.getCancelledInputTime() + getTime(StatsCategory.CANCELLED, StatsPhase.INPUT));
+        stats.setCancelledExecutionTime(stats.getCancelledExecutionTime() + getTime(StatsCategory.CANCELLED, StatsPhase.EXECUTION));
+        stats.setCancelledOutputTime(stats.getCancelledOutputTime() + getTime(StatsCategory.CANCELLED, StatsPhase.OUTPUT));
+        stats.setFailedStalled(stats.getFailedStalled() + (int) getCount(StatsCategory.FAILED_STALLED));
+        stats.setFailedStalledWaitingTime(stats.getFailedStalledWaitingTime() + getTime(StatsCategory.FAILED_STALLED, StatsPhase.WAITING));
+        stats.setFailedStalledInputTime(stats.getFailedStalledInputTime() + getTime(StatsCategory.FAILED_STALLED, StatsPhase.INPUT));
+        stats.setFailedStalledExecutionTime(stats.getFailedStalledExecutionTime() + getTime(StatsCategory.FAILED_STALLED, StatsPhase.EXECUTION));
+        stats.setFailedStalledOutputTime(stats.getFailedStalledOutputTime() + getTime(StatsCategory.FAILED_STALLED, StatsPhase.OUTPUT));
+        stats.setFailedInput(stats.getFailedInput() + (int) getCount(StatsCategory.FAILED_INPUT));
+        stats.setFailedInputWaitingTime(stats.getFailedInputWaitingTime() + getTime(StatsCategory.FAILED_INPUT, StatsPhase.WAITING));
+        stats.setFailedInputInputTime(stats.getFailedInputInputTime() + getTime(StatsCategory.FAILED_INPUT, StatsPhase.INPUT));
+        stats.setFailedInputExecutionTime(stats.getFailedInputExecutionTime() + getTime(StatsCategory.FAILED_INPUT, StatsPhase.EXECUTION));
+        stats.setFailedInputOutputTime(stats.getFailedInputOutputTime() + getTime(StatsCategory.FAILED_INPUT, StatsPhase.OUTPUT));
+        stats.setFailedOutput(stats.getFailedOutput() + (int) getCount(StatsCategory.FAILED_OUTPUT));
+        stats.setFailedOutputWaitingTime(stats.getFailedOutputWaitingTime() + getTime(StatsCategory.FAILED_OUTPUT, StatsPhase.WAITING));
+        stats.setFailedOutputInputTime(stats.getFailedOutputInputTime() + getTime(StatsCategory.FAILED_OUTPUT, StatsPhase.INPUT));
+        stats.setFailedOutputExecutionTime(stats.getFailedOutputExecutionTime() + getTime(StatsCategory.FAILED_OUTPUT, StatsPhase.EXECUTION));
+        stats.setFailedOutputOutputTime(stats.getFailedOutputOutputTime() + getTime(StatsCategory.FAILED_OUTPUT, StatsPhase.OUTPUT));
+        stats.setFailedApplication(stats.getFailedApplication() + (int) getCount(StatsCategory.FAILED_APPLICATION));
+        stats.setFailedApplicationWaitingTime(stats.getFailedApplicationWaitingTime() + getTime(StatsCategory.FAILED_APPLICATION, StatsPhase.WAITING));
+        stats.setFailedApplicationInputTime(stats.getFailedApplicationInputTime() + getTime(StatsCategory.FAILED_APPLICATION, StatsPhase.INPUT));
+        stats.setFailedApplicationExecutionTime(stats.getFailedApplicationExecutionTime() + getTime(StatsCategory.FAILED_APPLICATION, StatsPhase.EXECUTION));
+        stats.setFailedApplicationOutputTime(stats.getFailedApplicationOutputTime() + getTime(StatsCategory.FAILED_APPLICATION, StatsPhase.OUTPUT));
+    }
+
+    /**
+     * Overwrites the counters of a Stats object with these ones.
+     *
+     * @param stats Stats object
+     */
+    public void setTo(Stats stats) {
+
+        stats.setCompleted((int) getCount(StatsCategory.COMPLETED));
+        stats.setCompletedWaitingTime(getTime(StatsCategory.COMPLETED, StatsPhase.WAITING));
+        stats.setCompletedInputTime(getTime(StatsCategory.COMPLETED, StatsPhase.INPUT));
+        stats.setCompletedExecutionTime(getTime(StatsCategory.COMPLETED, StatsPhase.EXECUTION));
+        stats.setCompletedOutputTime(getTime(StatsCategory.COMPLETED, StatsPhase.OUTPUT));
+        stats.setCancelled((int) getCount(StatsCategory.CANCELLED));
+        stats.setCancelledWaitingTime(getTime(StatsCategory.CANCELLED, StatsPhase.WAITING));
+        stats.setCancelledInputTime(getTime(StatsCategory.CANCELLED, StatsPhase.INPUT));
+        stats.setCancelledExecutionTime(getTime(StatsCategory.CANCELLED, StatsPhase.EXECUTION));
+        stats.setCancelledOutputTime(getTime(StatsCategory.CANCELLED, StatsPhase.OUTPUT));
+        stats.setFailedStalled((int) getCount(StatsCategory.FAILED_STALLED));
+        stats.setFailedStalledWaitingTime(getTime(StatsCategory.FAILED_STALLED, StatsPhase.WAITING));
+        stats.setFailedStalledInputTime(getTime(StatsCategory.FAILED_STALLED, StatsPhase.INPUT));
+        stats.setFailedStalledExecutionTime(getTime(StatsCategory.FAILED_STALLED, StatsPhase.EXECUTION));
+        stats.setFailedStalledOutputTime(getTime(StatsCategory.FAILED_STALLED, StatsPhase.OUTPUT));
+        stats.setFailedInput((int) getCount(StatsCategory.FAILED_INPUT));
+        stats.setFailedInputWaitingTime(getTime(StatsCategory.FAILED_INPUT, StatsPhase.WAITING));
+        stats.setFailedInputInputTime(getTime(StatsCategory.FAILED_INPUT, StatsPhase.INPUT));
+        stats.setFailedInputExecutionTime(getTime(StatsCategory.FAILED_INPUT, StatsPhase.EXECUTION));
+        stats.setFailedInputOutputTime(getTime(StatsCategory.FAILED_INPUT, StatsPhase.OUTPUT));
+        stats.setFailedOutput((int) getCount(StatsCategory.FAILED_OUTPUT));
+        stats.setFailedOutputWaitingTime(getTime(StatsCategory.FAILED_OUTPUT, StatsPhase.WAITING));
+        stats.setFailedOutputInputTime(getTime(StatsCategory.FAILED_OUTPUT, StatsPhase.INPUT));
+        stats.setFailedOutputExecutionTime(getTime(StatsCategory.FAILED_OUTPUT, StatsPhase.EXECUTION));
+        stats.setFailedOutputOutputTime(getTime(StatsCategory.FAILED_OUTPUT, StatsPhase.OUTPUT));
+        stats.setFailedApplication((int) getCount(StatsCategory.FAILED_APPLICATION));
+        stats.setFailedApplicationWaitingTime(getTime(StatsCategory.FAILED_APPLICATION, StatsPhase.WAITING));
+        stats.setFailedApplicationInputTime(getTime(StatsCategory.FAILED_APPLICATION, StatsPhase.INPUT));
+        stats.setFailedApplicationExecutionTime(getTime(StatsCategory.FAILED_APPLICATION, StatsPhase.EXECUTION));
+        stats.setFailedApplicationOutputTime(getTime(StatsCategory.FAILED_APPLICATION, StatsPhase.OUTPUT));
+    }
+
+    /**
+     * Reads the counters of a Stats object.
+     *
+     * @param stats Stats object
+     * @return the counters
+     */
+    public static StatsCounters of(Stats stats) {
+
+        StatsCounters counters = new StatsCounters();
+        counters.add(countSlot(StatsCategory.COMPLETED), stats.getCompleted());
+        counters.add(timeSlot(StatsCategory.COMPLETED, StatsPhase.WAITING), stats.getCompletedWaitingTime());
+        counters.add(timeSlot(StatsCategory.COMPLETED, StatsPhase.INPUT), stats.getCompletedInputTime());
+        counters.add(timeSlot(StatsCategory.COMPLETED, StatsPhase.EXECUTION), stats.getCompletedExecutionTime());
+        counters.add(timeSlot(StatsCategory.COMPLETED, StatsPhase.OUTPUT), stats.getCompletedOutputTime());
+        counters.add(countSlot(StatsCategory.CANCELLED), stats.getCancelled());
+        counters.add(timeSlot(StatsCategory.CANCELLED, StatsPhase.WAITING), stats.getCancelledWaitingTime());
+        counters.add(timeSlot(StatsCategory.CANCELLED, StatsPhase.INPUT), stats.getCancelledInputTime());
+        counters.add(timeSlot(StatsCategory.CANCELLED, StatsPhase.EXECUTION), stats.getCancelledExecutionTime());
+        counters.add(timeSlot(StatsCategory.CANCELLED, StatsPhase.OUTPUT), stats.getCancelledOutputTime());
+        counters.add(countSlot(StatsCategory.FAILED_STALLED), stats.getFailedStalled());
+        counters.add(timeSlot(StatsCategory.FAILED_STALLED, StatsPhase.WAITING), stats.getFailedStalledWaitingTime());
+        counters.add(timeSlot(StatsCategory.FAILED_STALLED, StatsPhase.INPUT), stats.getFailedStalledInputTime());
+        counters.add(timeSlot(StatsCategory.FAILED_STALLED, StatsPhase.EXECUTION), stats.getFailedStalledExecutionTime());
+        counters.add(timeSlot(StatsCategory.FAILED_STALLED, StatsPhase.OUTPUT), stats.getFailedStalledOutputTime());
+        counters.add(countSlot(StatsCategory.FAILED_INPUT), stats.getFailedInput());
+        counters.add(timeSlot(StatsCategory.FAILED_INPUT, StatsPhase.WAITING), stats.getFailedInputWaitingTime());
+        counters.add(timeSlot(StatsCategory.FAILED_INPUT, StatsPhase.INPUT), stats.getFailedInputInputTime());
+        counters.add(timeSlot(StatsCategory.FAILED_INPUT, StatsPhase.EXECUTION), stats.getFailedInputExecutionTime());
+        counters.add(timeSlot(StatsCategory.FAILED_INPUT, StatsPhase.OUTPUT), stats.getFailedInputOutputTime());
+        counters.add(countSlot(StatsCategory.FAILED_OUTPUT), stats.getFailedOutput());
+        counters.add(timeSlot(StatsCategory.FAILED_OUTPUT, StatsPhase.WAITING), stats.getFailedOutputWaitingTime());
+        counters.add(timeSlot(StatsCategory.FAILED_OUTPUT, StatsPhase.INPUT), stats.getFailedOutputInputTime());
+        counters.add(timeSlot(StatsCategory.FAILED_OUTPUT, StatsPhase.EXECUTION), stats.getFailedOutputExecutionTime());
+        counters.add(timeSlot(StatsCategory.FAILED_OUTPUT, StatsPhase.OUTPUT), stats.getFailedOutputOutputTime());
+        counters.add(countSlot(StatsCategory.FAILED_APPLICATION), stats.getFailedApplication());
+        counters.add(timeSlot(StatsCategory.FAILED_APPLICATION, StatsPhase.WAITING), stats.getFailedApplicationWaitingTime());
+        counters.add(timeSlot(StatsCategory.FAILED_APPLICATION, StatsPhase.INPUT), stats.getFailedApplicationInputTime());
+        counters.add(timeSlot(StatsCategory.FAILED_APPLICATION, StatsPhase.EXECUTION), stats.getFailedApplicationExecutionTime());
+        counters.add(timeSlot(StatsCategory.FAILED_APPLICATION, StatsPhase.OUTPUT), stats.getFailedApplicationOutputTime());
+        return counters;
+    }
+}
@@ -0,0 +1,129 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation;
+
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.DimensionStats;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stats recorded since they were last drained, by simulation, command and
+ * site. The number of keys is bounded: once the capacity is reached, jobs
+ * of new keys are accounted without their site, then without their
+ * command, so that there are at most one more key per simulation and the
+ * totals of each simulation stay exact.
+ */
+public class StatsDimensionStore {
+
+    private final ConcurrentMap<StatsKey, StatsCounters> pending;
+    private final AtomicInteger size;
+    private final int capacity;
+
+    public StatsDimensionStore(int capacity) {
+
+        this.pending = new ConcurrentHashMap<>();
+        this.size = new AtomicInteger();
+        this.capacity = capacity;
+    }
+
+    public void record(JobTimeline job) {
+
+        StatsKey key = StatsKey.of(job);
+        if (size.get() >= capacity && !pending.containsKey(key)) {
+            key = key.withoutSite();
+            if (!pending.containsKey(key)) {
+                // a simulation always gets its own overflow key
+                key = key.withoutCommand();
+            }
+        }
+        pending.compute(key, (k, counters) -> {
+            if (counters == null) {
+                counters = new StatsCounters();
+                size.incrementAndGet();
+            }
+            counters.record(job);
+            return counters;
+        });
+    }
+
+    /**
+     * Removes the pending stats.
+     *
+     * @return one bean per key and category with jobs
+     */
+    public List<DimensionStats> drain() {
+
+        List<DimensionStats> drained = new ArrayList<>();
+        for (StatsKey key : pending.keySet()) {
+            StatsCounters counters = pending.remove(key);
+            if (counters == null) {
+                continue;
+            }
+            size.decrementAndGet();
+            for (StatsCategory category : StatsCategory.values()) {
+                if (counters.getCount(category) > 0) {
+                    drained.add(new DimensionStats(key, category, counters));
+                }
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Puts back stats that could not be persisted.
+     */
+    public void restore(List<DimensionStats> stats) {
+
+        for (DimensionStats delta : stats) {
+            StatsKey key = new StatsKey(delta.getSimulationID(), delta.getCommand(), delta.getSite());
+            pending.compute(key, (k, counters) -> {
+                if (counters == null) {
+                    counters = new StatsCounters();
+                    size.incrementAndGet();
+                }
+                delta.addTo(counters);
+                return counters;
+            });
+        }
+    }
+
+    public int size() {
+        return pending.size();
+    }
+}
@@ -0,0 +1,112 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation;
+
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.PhaseHistogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Phase time histograms recorded since they were last drained, by
+ * simulation.
+ */
+public class StatsHistogramStore {
+
+    private final ConcurrentMap<String, StatsHistograms> pending;
+
+    public StatsHistogramStore() {
+        this.pending = new ConcurrentHashMap<>();
+    }
+
+    public void record(JobTimeline job) {
+
+        pending.compute(job.simulationID(), (simulationID, histograms) -> {
+            if (histograms == null) {
+                histograms = new StatsHistograms();
+            }
+            histograms.record(job);
+            return histograms;
+        });
+    }
+
+    public StatsHistograms get(String simulationID) {
+        return pending.get(simulationID);
+    }
+
+    /**
+     * Removes the pending histograms.
+     *
+     * @return one bean per simulation, category and phase with recorded jobs
+     */
+    public List<PhaseHistogram> drain() {
+
+        List<PhaseHistogram> drained = new ArrayList<>();
+        for (String simulationID : pending.keySet()) {
+            StatsHistograms histograms = pending.remove(simulationID);
+            if (histograms == null) {
+                continue;
+            }
+            for (StatsCategory category : StatsCategory.values()) {
+                for (StatsPhase phase : StatsPhase.values()) {
+                    LogHistogram histogram = histograms.get(category, phase);
+                    if (histogram != null) {
+                        drained.add(new PhaseHistogram(simulationID, category, phase, histogram));
+                    }
+                }
+            }
+        }
+        return drained;
+    }
+
+    /**
+     * Puts back histograms that could not be persisted.
+     */
+    public void restore(List<PhaseHistogram> histograms) {
+
+        for (PhaseHistogram histogram : histograms) {
+            pending.compute(histogram.getSimulationID(), (simulationID, current) -> {
+                if (current == null) {
+                    current = new StatsHistograms();
+                }
+                current.merge(StatsCategory.valueOf(histogram.getCategory()),
+                        StatsPhase.valueOf(histogram.getPhase()), histogram.getHistogram());
+                return current;
+            });
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation;
+
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
+
+/**
+ * Phase time histograms of one simulation, one per category and phase,
+ * allocated on first use.
+ */
+public class StatsHistograms {
+
+    private final LogHistogram[] histograms;
+
+    public StatsHistograms() {
+        this.histograms = new LogHistogram[StatsCategory.values().length * StatsCounters.PHASES];
+    }
+
+    /**
+     * Classifies a finished job and records its phase times.
+     *
+     * @param job job timeline
+     * @return the category of the job, or null if it is not accounted
+     */
+    public synchronized StatsCategory record(JobTimeline job) {
+
+        StatsCategory category = StatsCounters.classify(job);
+        if (category == null) {
+            return null;
+        }
+        for (int phase = 0; phase < StatsCounters.PHASES; phase++) {
+            if (StatsCounters.hasPhase(job, category, phase)) {
+                int i = category.ordinal() * StatsCounters.PHASES + phase;
+                if (histograms[i] == null) {
+                    histograms[i] = new LogHistogram();
+                }
+                histograms[i].record(StatsCounters.phaseTime(job, category, phase));
+            }
+        }
+        return category;
+    }
+
+    /**
+     * @return the histogram, or null if no job was recorded in it
+     */
+    public synchronized LogHistogram get(StatsCategory category, StatsPhase phase) {
+        return histograms[category.ordinal() * StatsCounters.PHASES + phase.ordinal()];
+    }
+
+    public synchronized void merge(StatsCategory category, StatsPhase phase, LogHistogram histogram) {
+
+        int i = category.ordinal() * StatsCounters.PHASES + phase.ordinal();
+        if (histograms[i] == null) {
+            histograms[i] = new LogHistogram();
+        }
+        histograms[i].merge(histogram);
+    }
+}
@@ -0,0 +1,117 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation;
+
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ring of fixed-width time buckets of the counters of one simulation. A
+ * slot is reused, and its counters cleared, once the ring wraps around.
+ * Thread-safe.
+ */
+public class StatsRollup {
+
+    private final long width;
+    private final long[] starts;
+    private final StatsCounters[] buckets;
+    private long last;
+
+    public StatsRollup(int size, long width) {
+
+        this.width = width;
+        this.starts = new long[size];
+        this.buckets = new StatsCounters[size];
+    }
+
+    /**
+     * Adds a finished job to the bucket containing the given time.
+     */
+    public synchronized StatsCategory record(JobTimeline job, long time) {
+
+        long start = time - time % width;
+        int slot = slot(start);
+        if (buckets[slot] == null) {
+            buckets[slot] = new StatsCounters();
+        } else if (starts[slot] != start) {
+            buckets[slot].clear();
+        }
+        starts[slot] = start;
+        last = Math.max(last, start);
+        return buckets[slot].record(job);
+    }
+
+    /**
+     * @return a copy of the bucket starting at the given time, or null if it
+     * is empty or no longer in the ring
+     */
+    public synchronized StatsCounters get(long start) {
+
+        int slot = slot(start);
+        if (buckets[slot] == null || starts[slot] != start || buckets[slot].isEmpty()) {
+            return null;
+        }
+        StatsCounters copy = new StatsCounters();
+        copy.add(buckets[slot]);
+        return copy;
+    }
+
+    /**
+     * @return the start times of the non-empty buckets, oldest first
+     */
+    public synchronized List<Long> getStarts() {
+
+        List<Long> result = new ArrayList<>();
+        for (long start = last - (long) (buckets.length - 1) * width; start <= last; start += width) {
+            int slot = slot(start);
+            if (buckets[slot] != null && starts[slot] == start && !buckets[slot].isEmpty()) {
+                result.add(start);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the start of the newest bucket with a job
+     */
+    public synchronized long getLast() {
+        return last;
+    }
+
+    private int slot(long start) {
+        return (int) Math.floorMod(start / width, (long) buckets.length);
+    }
+}
@@ -0,0 +1,145 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation;
+
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.StatsBucket;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Rolling time buckets of the workflow stats, by simulation. Jobs are
+ * accounted in the bucket of the time they are processed, so a bucket is
+ * complete once the clock has passed its end.
+ */
+public class StatsRollupStore {
+
+    private final ConcurrentMap<String, StatsRollup> rollups;
+    private final int size;
+    private final long width;
+
+    public StatsRollupStore(int size, long width) {
+
+        this.rollups = new ConcurrentHashMap<>();
+        this.size = size;
+        this.width = width;
+    }
+
+    public void record(JobTimeline job) {
+        record(job, System.currentTimeMillis());
+    }
+
+    public void record(JobTimeline job, long time) {
+        rollups.compute(job.simulationID(), (simulationID, rollup) -> {
+            if (rollup == null) {
+                rollup = new StatsRollup(size, width);
+            }
+            rollup.record(job, time);
+            return rollup;
+        });
+    }
+
+    public StatsRollup get(String simulationID) {
+        return rollups.get(simulationID);
+    }
+
+    /**
+     * @return the buckets of a simulation still in memory, oldest first, one
+     * bean per bucket and category with jobs
+     */
+    public List<StatsBucket> getBuckets(String simulationID) {
+
+        List<StatsBucket> result = new ArrayList<>();
+        StatsRollup rollup = rollups.get(simulationID);
+        if (rollup != null) {
+            for (long start : rollup.getStarts()) {
+                toBuckets(simulationID, start, rollup.get(start), result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return the bucket starting at the given time for every simulation,
+     * one bean per simulation and category with jobs
+     */
+    public List<StatsBucket> getBuckets(long start) {
+
+        List<StatsBucket> result = new ArrayList<>();
+        for (Map.Entry<String, StatsRollup> entry : rollups.entrySet()) {
+            toBuckets(entry.getKey(), start, entry.getValue().get(start), result);
+        }
+        return result;
+    }
+
+    /**
+     * Forgets the simulations without jobs in the whole ring.
+     */
+    public void expire(long now) {
+
+        long limit = now - size * width;
+        for (String simulationID : rollups.keySet()) {
+            rollups.computeIfPresent(simulationID,
+                    (k, rollup) -> rollup.getLast() < limit ? null : rollup);
+        }
+    }
+
+    public long getStart(long time) {
+        return time - time % width;
+    }
+
+    public long getWidth() {
+        return width;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    private void toBuckets(String simulationID, long start, StatsCounters counters, List<StatsBucket> result) {
+
+        if (counters == null) {
+            return;
+        }
+        for (StatsCategory category : StatsCategory.values()) {
+            if (counters.getCount(category) > 0) {
+                result.add(new StatsBucket(simulationID, start, width, category, counters));
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.bean;
+
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCategory;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCounters;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsKey;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsPhase;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+
+/**
+ * Jobs of a simulation and category by command and execution site, with
+ * their summed phase times in seconds. An empty command or site stands for
+ * unknown or folded values.
+ */
+@Entity
+@Table(name = "StatsDimensions")
+@IdClass(DimensionStatsID.class)
+public class DimensionStats {
+
+    @Id
+    @Column(name = "simulation_id")
+    private String simulationID;
+
+    @Id
+    @Column(name = "command")
+    private String command;
+
+    @Id
+    @Column(name = "site", length = 128)
+    private String site;
+
+    @Id
+    @Column(name = "category", length = 32)
+    private String category;
+
+    @Column(name = "job_count")
+    private long count;
+
+    @Column(name = "waiting_time")
+    private long waitingTime;
+
+    @Column(name = "input_time")
+    private long inputTime;
+
+    @Column(name = "execution_time")
+    private long executionTime;
+
+    @Column(name = "output_time")
+    private long outputTime;
+
+    public DimensionStats() {
+    }
+
+    public DimensionStats(StatsKey key, StatsCategory category, StatsCounters counters) {
+
+        this.simulationID = key.simulationID();
+        this.command = key.command();
+        this.site = key.site();
+        this.category = category.name();
+        this.count = counters.getCount(category);
+        this.waitingTime = counters.getTime(category, StatsPhase.WAITING);
+        this.inputTime = counters.getTime(category, StatsPhase.INPUT);
+        this.executionTime = counters.getTime(category, StatsPhase.EXECUTION);
+        this.outputTime = counters.getTime(category, StatsPhase.OUTPUT);
+    }
+
+    /**
+     * Adds the jobs of another bean with the same key and category.
+     */
+    public void add(DimensionStats other) {
+
+        count += other.count;
+        waitingTime += other.waitingTime;
+        inputTime += other.inputTime;
+        executionTime += other.executionTime;
+        outputTime += other.outputTime;
+    }
+
+    /**
+     * Adds the jobs of this bean to counters.
+     */
+    public void addTo(StatsCounters counters) {
+
+        StatsCategory category = StatsCategory.valueOf(this.category);
+        counters.add(StatsCounters.countSlot(category), count);
+        counters.add(StatsCounters.timeSlot(category, StatsPhase.WAITING), waitingTime);
+        counters.add(StatsCounters.timeSlot(category, StatsPhase.INPUT), inputTime);
+        counters.add(StatsCounters.timeSlot(category, StatsPhase.EXECUTION), executionTime);
+        counters.add(StatsCounters.timeSlot(category, StatsPhase.OUTPUT), outputTime);
+    }
+
+    public String getSimulationID() {
+        return simulationID;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public String getSite() {
+        return site;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getWaitingTime() {
+        return waitingTime;
+    }
+
+    public long getInputTime() {
+        return inputTime;
+    }
+
+    public long getExecutionTime() {
+        return executionTime;
+    }
+
+    public long getOutputTime() {
+        return outputTime;
+    }
+}
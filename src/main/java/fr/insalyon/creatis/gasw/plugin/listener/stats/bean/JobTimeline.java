@@ -0,0 +1,81 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.bean;
+
+import fr.insalyon.creatis.gasw.bean.Job;
+import fr.insalyon.creatis.gasw.execution.GaswStatus;
+
+import java.util.Date;
+
+/**
+ * Immutable snapshot of the fields of a job needed to compute its stats.
+ * Times are in milliseconds since the epoch, {@link #NONE} when the job did
+ * not reach the corresponding phase.
+ */
+public record JobTimeline(String id, String fileName, String simulationID, String command,
+        String site, GaswStatus status,
+        int exitCode, long queued, long download, long running, long upload, long end) {
+
+    public final static long NONE = 0L;
+
+    public static JobTimeline of(Job job) {
+
+        return new JobTimeline(job.getId(), job.getFileName(), job.getSimulationID(),
+                job.getCommand(), job.getNode() != null ? job.getNode().getSiteName() : null,
+                job.getStatus(), job.getExitCode(), time(job.getQueued()),
+                time(job.getDownload()), time(job.getRunning()),
+                time(job.getUpload()), time(job.getEnd()));
+    }
+
+    public boolean isFinished() {
+
+        if (end == NONE || status == null) {
+            return false;
+        }
+        switch (status) {
+            case COMPLETED:
+            case ERROR:
+            case STALLED:
+            case CANCELLED:
+            case DELETED:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static long time(Date date) {
+        return date != null ? date.getTime() : NONE;
+    }
+}
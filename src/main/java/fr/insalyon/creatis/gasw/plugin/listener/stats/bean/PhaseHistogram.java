@@ -0,0 +1,136 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.bean;
+
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.LogHistogram;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCategory;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsPhase;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Lob;
+import jakarta.persistence.Table;
+
+/**
+ * Phase time histogram of a simulation and category, stored in the GASW
+ * database with its main percentiles, in seconds.
+ */
+@Entity
+@Table(name = "StatsPhaseHistograms")
+@IdClass(PhaseHistogramID.class)
+public class PhaseHistogram {
+
+    @Id
+    @Column(name = "simulation_id")
+    private String simulationID;
+
+    @Id
+    @Column(name = "category", length = 32)
+    private String category;
+
+    @Id
+    @Column(name = "phase", length = 16)
+    private String phase;
+
+    @Column(name = "total_count")
+    private long totalCount;
+
+    @Column(name = "p50")
+    private long p50;
+
+    @Column(name = "p95")
+    private long p95;
+
+    @Column(name = "p99")
+    private long p99;
+
+    @Lob
+    @Column(name = "data")
+    private byte[] data;
+
+    public PhaseHistogram() {
+    }
+
+    public PhaseHistogram(String simulationID, StatsCategory category,
+            StatsPhase phase, LogHistogram histogram) {
+
+        this.simulationID = simulationID;
+        this.category = category.name();
+        this.phase = phase.name();
+        setHistogram(histogram);
+    }
+
+    public String getSimulationID() {
+        return simulationID;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public String getPhase() {
+        return phase;
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP95() {
+        return p95;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+    public LogHistogram getHistogram() {
+        return LogHistogram.fromByteArray(data);
+    }
+
+    public final void setHistogram(LogHistogram histogram) {
+
+        this.data = histogram.toByteArray();
+        this.totalCount = histogram.getTotalCount();
+        this.p50 = histogram.getValueAtPercentile(50);
+        this.p95 = histogram.getValueAtPercentile(95);
+        this.p99 = histogram.getValueAtPercentile(99);
+    }
+}
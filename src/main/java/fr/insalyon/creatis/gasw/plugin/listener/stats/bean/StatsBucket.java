@@ -0,0 +1,150 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.bean;
+
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCategory;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCounters;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsPhase;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.IdClass;
+import jakarta.persistence.Table;
+
+/**
+ * Jobs of a simulation and category processed during a time bucket, with
+ * their summed phase times in seconds. Bucket times are in milliseconds
+ * since the epoch.
+ */
+@Entity
+@Table(name = "StatsBuckets")
+@IdClass(StatsBucketID.class)
+public class StatsBucket {
+
+    @Id
+    @Column(name = "simulation_id")
+    private String simulationID;
+
+    @Id
+    @Column(name = "bucket_start")
+    private long start;
+
+    @Id
+    @Column(name = "category", length = 32)
+    private String category;
+
+    @Column(name = "bucket_width")
+    private long width;
+
+    @Column(name = "job_count")
+    private long count;
+
+    @Column(name = "waiting_time")
+    private long waitingTime;
+
+    @Column(name = "input_time")
+    private long inputTime;
+
+    @Column(name = "execution_time")
+    private long executionTime;
+
+    @Column(name = "output_time")
+    private long outputTime;
+
+    public StatsBucket() {
+    }
+
+    public StatsBucket(String simulationID, long start, long width,
+            StatsCategory category, StatsCounters counters) {
+
+        this.simulationID = simulationID;
+        this.start = start;
+        this.width = width;
+        this.category = category.name();
+        this.count = counters.getCount(category);
+        this.waitingTime = counters.getTime(category, StatsPhase.WAITING);
+        this.inputTime = counters.getTime(category, StatsPhase.INPUT);
+        this.executionTime = counters.getTime(category, StatsPhase.EXECUTION);
+        this.outputTime = counters.getTime(category, StatsPhase.OUTPUT);
+    }
+
+    /**
+     * Adds the jobs of another bean of the same bucket and category.
+     */
+    public void add(StatsBucket other) {
+
+        count += other.count;
+        waitingTime += other.waitingTime;
+        inputTime += other.inputTime;
+        executionTime += other.executionTime;
+        outputTime += other.outputTime;
+    }
+
+    public String getSimulationID() {
+        return simulationID;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public long getWidth() {
+        return width;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getWaitingTime() {
+        return waitingTime;
+    }
+
+    public long getInputTime() {
+        return inputTime;
+    }
+
+    public long getExecutionTime() {
+        return executionTime;
+    }
+
+    public long getOutputTime() {
+        return outputTime;
+    }
+}
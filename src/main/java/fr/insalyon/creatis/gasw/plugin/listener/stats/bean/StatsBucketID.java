@@ -0,0 +1,85 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.bean;
+
+import java.io.Serializable;
+import java.util.Objects;
+
+public class StatsBucketID implements Serializable {
+
+    private String simulationID;
+    private long start;
+    private String category;
+
+    public StatsBucketID() {
+    }
+
+    public StatsBucketID(String simulationID, long start, String category) {
+        this.simulationID = simulationID;
+        this.start = start;
+        this.category = category;
+    }
+
+    public String getSimulationID() {
+        return simulationID;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof StatsBucketID)) {
+            return false;
+        }
+        StatsBucketID other = (StatsBucketID) o;
+        return Objects.equals(simulationID, other.simulationID)
+                && start == other.start
+                && Objects.equals(category, other.category);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(simulationID, start, category);
+    }
+}
@@ -34,12 +34,57 @@
 package fr.insalyon.creatis.gasw.plugin.listener.stats.dao;
 
 import fr.insalyon.creatis.gasw.GaswExitCode;
-import fr.insalyon.creatis.gasw.bean.Job;
 import fr.insalyon.creatis.gasw.dao.DAOException;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCounters;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public interface StatsJobDAO {
 
-    public List<Job> getByFilenameAndExitCode(String fileName, GaswExitCode exitCode) throws DAOException;
+    /**
+     * Gets the jobs matching a file name and an exit code, latest end first.
+     * Jobs without end date come last, and at most two jobs are returned:
+     * enough to pick the last finished one or to detect that there is none.
+     */
+    public List<JobTimeline> getByFilenameAndExitCode(String fileName, GaswExitCode exitCode) throws DAOException;
+
+    /**
+     * Gets the jobs matching any of the file names and an exit code, grouped
+     * by file name and ordered as in {@link #getByFilenameAndExitCode}.
+     */
+    public Map<String, List<JobTimeline>> getByFilenamesAndExitCode(Collection<String> fileNames, GaswExitCode exitCode) throws DAOException;
+
+    /**
+     * Streams the finished jobs of some simulations, or of all simulations
+     * if none is given, in chunks of at most chunkSize jobs. As in the
+     * listener, only the job that ended last is kept among the jobs of a
+     * file with the same exit code.
+     */
+    public void scrollFinished(Collection<String> simulationIDs, int chunkSize,
+            Consumer<List<JobTimeline>> consumer) throws DAOException;
+
+    /**
+     * Gets the simulations having finished jobs.
+     */
+    public List<String> getSimulationIDs() throws DAOException;
+
+    /**
+     * Gets the simulations having jobs that are not finished yet, held
+     * ones included.
+     */
+    public List<String> getActiveSimulationIDs() throws DAOException;
+
+    /**
+     * Aggregates the finished jobs of a simulation in the database, with a
+     * single query grouped by status and exit code. As by the listener,
+     * only the job that ended last is kept for each file and exit code,
+     * and jobs lacking a date their category needs are left out. Phase times are summed
+     * by the database, so they may differ from the listener's by up to a
+     * second per job depending on how it rounds timestamp differences.
+     */
+    public StatsCounters aggregateFinished(String simulationID) throws DAOException;
 }
@@ -34,23 +34,60 @@ package fr.insalyon.creatis.gasw.plugin.listener.stats.dao;
 
 import fr.insalyon.creatis.gasw.dao.DAOException;
 import fr.insalyon.creatis.gasw.dao.HibernateDAOFactory;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.dao.hibernate.StatsBucketData;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.dao.hibernate.StatsDimensionData;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.dao.hibernate.StatsHistogramData;
 import fr.insalyon.creatis.gasw.plugin.listener.stats.dao.hibernate.StatsJobData;
+import org.hibernate.SessionFactory;
 
+/**
+ * Holds one instance of each DAO of the plugin. The DAOs only keep the GASW
+ * session factory, so they are shared by every thread.
+ */
 public class StatsPluginDAOFactory {
 
-    private static StatsPluginDAOFactory instance;
+    private static volatile StatsPluginDAOFactory instance;
+    private final StatsJobDAO jobDAO;
+    private final StatsHistogramDAO histogramDAO;
+    private final StatsDimensionDAO dimensionDAO;
+    private final StatsBucketDAO bucketDAO;
 
     public static StatsPluginDAOFactory getInstance() throws DAOException {
-        if (instance == null) {
-            instance = new StatsPluginDAOFactory();
+
+        StatsPluginDAOFactory factory = instance;
+        if (factory == null) {
+            synchronized (StatsPluginDAOFactory.class) {
+                factory = instance;
+                if (factory == null) {
+                    factory = new StatsPluginDAOFactory(HibernateDAOFactory.getInstance().getSessionFactory());
+                    instance = factory;
+                }
+            }
         }
+        return factory;
+    }
+
+    private StatsPluginDAOFactory(SessionFactory sessionFactory) {
+
+        jobDAO = new StatsJobData(sessionFactory);
+        histogramDAO = new StatsHistogramData(sessionFactory);
+        dimensionDAO = new StatsDimensionData(sessionFactory);
+        bucketDAO = new StatsBucketData(sessionFactory);
+    }
+
+    public StatsJobDAO getJobDAO() {
+        return jobDAO;
+    }
+
+    public StatsHistogramDAO getHistogramDAO() {
+        return histogramDAO;
+    }
 
-        return instance;
+    public StatsDimensionDAO getDimensionDAO() {
+        return dimensionDAO;
     }
 
-    private StatsPluginDAOFactory() {}
-    
-    public StatsJobDAO getJobDAO() throws DAOException {
-        return new StatsJobData(HibernateDAOFactory.getInstance().getSessionFactory());
+    public StatsBucketDAO getBucketDAO() {
+        return bucketDAO;
     }
 }
@@ -0,0 +1,114 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.dao.hibernate;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Adds deltas to rows keyed by their ID, inserting the missing ones, in a
+ * single transaction. Deltas are processed in chunks: the stored rows of a
+ * chunk are loaded with one multi-ID query, and the inserts and updates are
+ * sent in JDBC batches before the session is cleared.
+ */
+final class BatchUpsert {
+
+    static final int CHUNK_SIZE = 500;
+    static final int JDBC_BATCH_SIZE = 50;
+
+    private BatchUpsert() {
+    }
+
+    /**
+     * @param sessionFactory session factory
+     * @param type entity class
+     * @param deltas deltas to add, persisted as is when no row matches
+     * @param id builds the ID of a delta
+     * @param merge adds a delta (second argument) to its stored row
+     * @throws org.hibernate.HibernateException if the transaction failed
+     * and was rolled back; other runtime exceptions are rolled back too
+     */
+    static <T> void upsert(SessionFactory sessionFactory, Class<T> type, List<T> deltas,
+            Function<T, Object> id, BiConsumer<T, T> merge) {
+
+        try (Session session = sessionFactory.openSession()) {
+            session.setJdbcBatchSize(JDBC_BATCH_SIZE);
+            Transaction transaction = session.beginTransaction();
+            try {
+                for (int from = 0; from < deltas.size(); from += CHUNK_SIZE) {
+                    List<T> chunk = deltas.subList(from, Math.min(deltas.size(), from + CHUNK_SIZE));
+                    List<Object> ids = new ArrayList<>(chunk.size());
+                    for (T delta : chunk) {
+                        ids.add(id.apply(delta));
+                    }
+                    List<T> loaded = session.byMultipleIds(type)
+                            .withBatchSize(chunk.size())
+                            .multiLoad(ids);
+
+                    Map<Object, T> stored = new HashMap<>();
+                    for (T row : loaded) {
+                        if (row != null) {
+                            stored.put(id.apply(row), row);
+                        }
+                    }
+                    for (T delta : chunk) {
+                        T row = stored.get(id.apply(delta));
+                        if (row == null) {
+                            // a later delta of the chunk may have the same ID
+                            session.persist(delta);
+                            stored.put(id.apply(delta), delta);
+                        } else {
+                            merge.accept(row, delta);
+                        }
+                    }
+                    session.flush();
+                    session.clear();
+                }
+                transaction.commit();
+
+            } catch (RuntimeException ex) {
+                transaction.rollback();
+                throw ex;
+            }
+        }
+    }
+}
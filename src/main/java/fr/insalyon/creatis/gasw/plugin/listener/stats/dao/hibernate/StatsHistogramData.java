@@ -0,0 +1,88 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.dao.hibernate;
+
+import fr.insalyon.creatis.gasw.dao.DAOException;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.LogHistogram;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.PhaseHistogram;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.PhaseHistogramID;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.dao.StatsHistogramDAO;
+
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+
+import java.util.List;
+
+public class StatsHistogramData implements StatsHistogramDAO {
+
+    private SessionFactory sessionFactory;
+
+    public StatsHistogramData(SessionFactory sessionFactory) {
+        this.sessionFactory = sessionFactory;
+    }
+
+    @Override
+    public List<PhaseHistogram> getBySimulationID(String simulationID) throws DAOException {
+
+        try (Session session = sessionFactory.openSession()) {
+
+            return session.createSelectionQuery("FROM PhaseHistogram h "
+                    + "WHERE h.simulationID = :simulationID", PhaseHistogram.class)
+                    .setParameter("simulationID", simulationID)
+                    .setReadOnly(true)
+                    .list();
+
+        } catch (HibernateException ex) {
+            throw new DAOException(ex);
+        }
+    }
+
+    @Override
+    public void add(List<PhaseHistogram> histograms) throws DAOException {
+
+        try {
+            BatchUpsert.upsert(sessionFactory, PhaseHistogram.class, histograms,
+                    delta -> new PhaseHistogramID(delta.getSimulationID(), delta.getCategory(), delta.getPhase()),
+                    (stored, delta) -> {
+                        LogHistogram histogram = stored.getHistogram();
+                        histogram.merge(delta.getHistogram());
+                        stored.setHistogram(histogram);
+                    });
+
+        } catch (HibernateException ex) {
+            throw new DAOException(ex);
+        }
+    }
+}
@@ -30,56 +30,249 @@
  * The fact that you are presently reading this means that you have had
  * knowledge of the CeCILL license and that you accept its terms.
  */
+
 package fr.insalyon.creatis.gasw.plugin.listener.stats.dao.hibernate;
 
 import fr.insalyon.creatis.gasw.GaswExitCode;
-import fr.insalyon.creatis.gasw.bean.Job;
 import fr.insalyon.creatis.gasw.dao.DAOException;
+import fr.insalyon.creatis.gasw.execution.GaswStatus;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCategory;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCounters;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
 import fr.insalyon.creatis.gasw.plugin.listener.stats.dao.StatsJobDAO;
 
-import jakarta.persistence.criteria.CriteriaQuery;
-import jakarta.persistence.criteria.Predicate;
-import jakarta.persistence.criteria.Root;
-import jakarta.persistence.criteria.CriteriaBuilder;
-
 import org.hibernate.HibernateException;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.StatelessSession;
 import org.hibernate.SessionFactory;
+import org.hibernate.query.SelectionQuery;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 public class StatsJobData implements StatsJobDAO {
 
+    private static final String SELECT_TIMELINE = "SELECT j.id, j.fileName, j.simulationID, j.command, "
+            + "n.siteName, j.status, j.exitCode, j.queued, j.download, j.running, j.upload, j.end "
+            + "FROM Job j LEFT JOIN j.node n ";
+    private static final String ORDER_BY_END = " ORDER BY j.end DESC NULLS LAST";
+
+    private static final List<GaswStatus> FINISHED_STATUSES = List.of(GaswStatus.COMPLETED,
+            GaswStatus.ERROR, GaswStatus.STALLED, GaswStatus.CANCELLED, GaswStatus.DELETED);
+    private static final List<GaswStatus> ACTIVE_STATUSES = List.of(GaswStatus.NOT_SUBMITTED,
+            GaswStatus.SUCCESSFULLY_SUBMITTED, GaswStatus.QUEUED, GaswStatus.RUNNING,
+            GaswStatus.REPLICATE, GaswStatus.RESCHEDULE, GaswStatus.KILL,
+            GaswStatus.ERROR_HELD, GaswStatus.STALLED_HELD);
+
+    // the listener accounts one job per file and exit code, the last one to end (see selectLastjob)
+    private static final String LATEST = "j.end IS NOT NULL AND NOT EXISTS (SELECT j2.id FROM Job j2 "
+            + "WHERE j2.fileName = j.fileName AND j2.exitCode = j.exitCode "
+            + "AND (j2.end > j.end OR (j2.end = j.end AND j2.id < j.id)))";
+
+    private static final String BY_FILENAME = "StatsJobData.byFilenameAndExitCode";
+    private static final String BY_FILENAMES = "StatsJobData.byFilenamesAndExitCode";
+
+    // jobs missing a phase start are grouped apart, as complete categories do not account them
+    private static final String INCOMPLETE = "CASE WHEN j.queued IS NULL OR j.download IS NULL "
+            + "OR j.running IS NULL OR j.upload IS NULL THEN true ELSE false END";
+    // a phase ends when the next one starts, or at the end date for jobs that stopped in it
+    private static final String SELECT_AGGREGATE = "SELECT j.status, j.exitCode, " + INCOMPLETE + ", count(j), "
+            + "sum((coalesce(j.download, j.end) - j.queued) by second), "
+            + "sum((coalesce(j.running, j.end) - j.download) by second), "
+            + "sum((coalesce(j.upload, j.end) - j.running) by second), "
+            + "sum((j.end - j.upload) by second) "
+            + "FROM Job j WHERE j.simulationID = :simulationID AND j.status IN (:statuses) "
+            + "AND " + LATEST + " "
+            + "GROUP BY j.status, j.exitCode, " + INCOMPLETE;
+
     private SessionFactory sessionFactory;
 
+    /**
+     * Registers the lookup queries as named queries, so that they are
+     * parsed and translated once instead of on every lookup.
+     */
     public StatsJobData(SessionFactory sessionFactory) {
+
         this.sessionFactory = sessionFactory;
+        try (Session session = sessionFactory.openSession()) {
+            sessionFactory.addNamedQuery(BY_FILENAME, session.createQuery(SELECT_TIMELINE
+                    + "WHERE j.fileName = :fileName AND j.exitCode = :exitCode"
+                    + ORDER_BY_END, Object[].class)
+                    .setMaxResults(2));
+            sessionFactory.addNamedQuery(BY_FILENAMES, session.createQuery(SELECT_TIMELINE
+                    + "WHERE j.fileName IN (:fileNames) AND j.exitCode = :exitCode"
+                    + ORDER_BY_END, Object[].class));
+        }
     }
 
     @Override
-    public List<Job> getByFilenameAndExitCode(String fileName, GaswExitCode exitCode) throws DAOException {
+    public List<JobTimeline> getByFilenameAndExitCode(String fileName, GaswExitCode exitCode) throws DAOException {
 
-        try (Session session = sessionFactory.openSession()){
-            session.beginTransaction();
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
 
-            CriteriaBuilder criteriaBuilder = session.getCriteriaBuilder();
-            CriteriaQuery<Job> criteriaQuery = criteriaBuilder.createQuery(Job.class);
-            Root<Job> root = criteriaQuery.from(Job.class);
-            List<Predicate> predicates = new ArrayList<>();
+            List<Object[]> rows = session.createNamedSelectionQuery(BY_FILENAME, Object[].class)
+                    .setParameter("fileName", fileName)
+                    .setParameter("exitCode", exitCode.getExitCode())
+                    .setReadOnly(true)
+                    .list();
 
-            predicates.add(criteriaBuilder.equal(root.get("fileName"), fileName));
-            predicates.add(criteriaBuilder.equal(root.get("exitCode"), exitCode.getExitCode()));
+            List<JobTimeline> jobs = new ArrayList<>(rows.size());
+            for (Object[] row : rows) {
+                jobs.add(toTimeline(row));
+            }
+            return jobs;
 
-            criteriaQuery.where(predicates.toArray(new Predicate[0]));
+        } catch (HibernateException ex) {
+            throw new DAOException(ex);
+        }
+    }
 
-            List<Job> jobs = session.createQuery(criteriaQuery).list();
+    @Override
+    public Map<String, List<JobTimeline>> getByFilenamesAndExitCode(Collection<String> fileNames, GaswExitCode exitCode) throws DAOException {
 
-            session.getTransaction().commit();
+        Map<String, List<JobTimeline>> jobs = new HashMap<>();
+        if (fileNames.isEmpty()) {
             return jobs;
+        }
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+
+            List<Object[]> rows = session.createNamedSelectionQuery(BY_FILENAMES, Object[].class)
+                    .setParameterList("fileNames", fileNames)
+                    .setParameter("exitCode", exitCode.getExitCode())
+                    .setReadOnly(true)
+                    .list();
+
+            for (Object[] row : rows) {
+                JobTimeline job = toTimeline(row);
+                jobs.computeIfAbsent(job.fileName(), k -> new ArrayList<>(1)).add(job);
+            }
+            return jobs;
+
+        } catch (HibernateException ex) {
+            throw new DAOException(ex);
+        }
+    }
+
+    @Override
+    public void scrollFinished(Collection<String> simulationIDs, int chunkSize,
+            Consumer<List<JobTimeline>> consumer) throws DAOException {
+
+        String hql = SELECT_TIMELINE + "WHERE j.status IN (:statuses) AND " + LATEST;
+        if (!simulationIDs.isEmpty()) {
+            hql += " AND j.simulationID IN (:simulationIDs)";
+        }
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            session.beginTransaction();
+
+            SelectionQuery<Object[]> query = session.createSelectionQuery(hql, Object[].class)
+                    .setParameterList("statuses", FINISHED_STATUSES)
+                    .setReadOnly(true)
+                    .setFetchSize(chunkSize);
+            if (!simulationIDs.isEmpty()) {
+                query.setParameterList("simulationIDs", simulationIDs);
+            }
+
+            try (ScrollableResults<Object[]> results = query.scroll(ScrollMode.FORWARD_ONLY)) {
+                List<JobTimeline> chunk = new ArrayList<>(chunkSize);
+                while (results.next()) {
+                    chunk.add(toTimeline(results.get()));
+                    if (chunk.size() == chunkSize) {
+                        consumer.accept(chunk);
+                        chunk = new ArrayList<>(chunkSize);
+                    }
+                }
+                if (!chunk.isEmpty()) {
+                    consumer.accept(chunk);
+                }
+            }
+            session.getTransaction().commit();
 
         } catch (HibernateException ex) {
             throw new DAOException(ex);
         }
     }
+
+    @Override
+    public List<String> getSimulationIDs() throws DAOException {
+
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+
+            return session.createSelectionQuery("SELECT DISTINCT j.simulationID FROM Job j "
+                    + "WHERE j.status IN (:statuses)", String.class)
+                    .setParameterList("statuses", FINISHED_STATUSES)
+                    .setReadOnly(true)
+                    .list();
+
+        } catch (HibernateException ex) {
+            throw new DAOException(ex);
+        }
+    }
+
+    @Override
+    public List<String> getActiveSimulationIDs() throws DAOException {
+
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+
+            return session.createSelectionQuery("SELECT DISTINCT j.simulationID FROM Job j "
+                    + "WHERE j.status IN (:statuses)", String.class)
+                    .setParameterList("statuses", ACTIVE_STATUSES)
+                    .setReadOnly(true)
+                    .list();
+
+        } catch (HibernateException ex) {
+            throw new DAOException(ex);
+        }
+    }
+
+    @Override
+    public StatsCounters aggregateFinished(String simulationID) throws DAOException {
+
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+
+            // only used by the reconciler: translated on first use, then cached by Hibernate
+            List<Object[]> rows = session.createSelectionQuery(SELECT_AGGREGATE, Object[].class)
+                    .setParameter("simulationID", simulationID)
+                    .setParameterList("statuses", FINISHED_STATUSES)
+                    .setReadOnly(true)
+                    .list();
+
+            StatsCounters counters = new StatsCounters();
+            for (Object[] row : rows) {
+                StatsCategory category = StatsCategory.classify((GaswStatus) row[0], (Integer) row[1]);
+                if (category == null || (!category.isPartial() && (Boolean) row[2])) {
+                    continue;
+                }
+                int slot = StatsCounters.countSlot(category);
+                counters.add(slot, ((Number) row[3]).longValue());
+                for (int phase = 0; phase < StatsCounters.PHASES; phase++) {
+                    Number time = (Number) row[4 + phase];
+                    if (time != null) {
+                        counters.add(slot + 1 + phase, time.longValue());
+                    }
+                }
+            }
+            return counters;
+
+        } catch (HibernateException ex) {
+            throw new DAOException(ex);
+        }
+    }
+
+    private JobTimeline toTimeline(Object[] row) {
+
+        return new JobTimeline((String) row[0], (String) row[1], (String) row[2],
+                (String) row[3], (String) row[4], (GaswStatus) row[5], (Integer) row[6],
+                time(row[7]), time(row[8]), time(row[9]), time(row[10]), time(row[11]));
+    }
+
+    private long time(Object date) {
+        return date != null ? ((Date) date).getTime() : JobTimeline.NONE;
+    }
 }
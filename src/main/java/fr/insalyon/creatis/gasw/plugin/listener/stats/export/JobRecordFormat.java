@@ -0,0 +1,108 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.export;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout of the job record files: a header followed by fixed-size, big
+ * endian records. Phase times are in seconds, -1 when the job did not
+ * reach the phase. The status is the ordinal of GaswStatus and the
+ * category the ordinal of StatsCategory, -1 for unaccounted jobs. Strings
+ * are UTF-8, zero padded and truncated to {@link #STRING_SIZE} bytes; the
+ * flags of a record tell which of its strings were truncated.
+ */
+final class JobRecordFormat {
+
+    // "GSJR", distinct from the stats journal
+    static final int MAGIC = 0x47534A52;
+    static final short VERSION = 2;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 352;
+    static final int STRING_SIZE = 64;
+
+    // header layout
+    static final int HEADER_MAGIC = 0;
+    static final int HEADER_VERSION = 4;
+    static final int HEADER_RECORD_SIZE = 6;
+
+    // record layout
+    static final int END = 0;
+    static final int EXIT_CODE = 8;
+    static final int STATUS = 12;
+    static final int CATEGORY = 13;
+    static final int TRUNCATED = 14;
+    static final int PHASES = 16;
+    static final int JOB_ID = 32;
+    static final int FILE_NAME = JOB_ID + STRING_SIZE;
+    static final int SIMULATION_ID = FILE_NAME + STRING_SIZE;
+    static final int COMMAND = SIMULATION_ID + STRING_SIZE;
+    static final int SITE = COMMAND + STRING_SIZE;
+
+    // strings in record order, their index is their bit in the truncation flags
+    static final int[] STRINGS = {JOB_ID, FILE_NAME, SIMULATION_ID, COMMAND, SITE};
+
+    private JobRecordFormat() {
+    }
+
+    /**
+     * @return whether the value was truncated
+     */
+    static boolean putString(ByteBuffer buffer, int offset, String value) {
+
+        byte[] bytes = value != null ? value.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int length = Math.min(bytes.length, STRING_SIZE);
+        // do not cut a character
+        while (length < bytes.length && length > 0 && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+        buffer.put(offset, bytes, 0, length);
+        for (int i = length; i < STRING_SIZE; i++) {
+            buffer.put(offset + i, (byte) 0);
+        }
+        return length < bytes.length;
+    }
+
+    static String getString(ByteBuffer buffer, int offset) {
+
+        int length = 0;
+        while (length < STRING_SIZE && buffer.get(offset + length) != 0) {
+            length++;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,154 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.export;
+
+import fr.insalyon.creatis.gasw.execution.GaswStatus;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCategory;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsPhase;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the files written by {@link JobRecordSink} and converts them to
+ * CSV.
+ */
+public class JobRecordReader {
+
+    private static final int BATCH_RECORDS = 8192;
+
+    /**
+     * Writes the records of a file as CSV lines, without header.
+     *
+     * @return the number of records
+     */
+    public static long toCsv(Path file, Writer out) throws IOException {
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(JobRecordFormat.HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+            }
+            if (header.getInt(JobRecordFormat.HEADER_MAGIC) != JobRecordFormat.MAGIC
+                    || header.getShort(JobRecordFormat.HEADER_VERSION) != JobRecordFormat.VERSION
+                    || header.getShort(JobRecordFormat.HEADER_RECORD_SIZE) != JobRecordFormat.RECORD_SIZE) {
+                throw new IOException(file + " is not a job record file of version " + JobRecordFormat.VERSION);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BATCH_RECORDS * JobRecordFormat.RECORD_SIZE);
+            long records = 0;
+            while (channel.read(buffer) >= 0 || buffer.position() > 0) {
+                buffer.flip();
+                while (buffer.remaining() >= JobRecordFormat.RECORD_SIZE) {
+                    writeRecord(buffer, buffer.position(), out);
+                    buffer.position(buffer.position() + JobRecordFormat.RECORD_SIZE);
+                    records++;
+                }
+                if (buffer.hasRemaining() && channel.position() == channel.size()) {
+                    // record truncated by a crash
+                    break;
+                }
+                buffer.compact();
+            }
+            return records;
+        }
+    }
+
+    public static String csvHeader() {
+
+        StringBuilder header = new StringBuilder(
+                "job_id,file_name,simulation_id,command,site,status,category,exit_code,end");
+        for (StatsPhase phase : StatsPhase.values()) {
+            header.append(',').append(phase.name().toLowerCase()).append("_time");
+        }
+        return header.append(",truncated").toString();
+    }
+
+    private static void writeRecord(ByteBuffer buffer, int offset, Writer out) throws IOException {
+
+        int status = buffer.get(offset + JobRecordFormat.STATUS);
+        int category = buffer.get(offset + JobRecordFormat.CATEGORY);
+        for (int string : JobRecordFormat.STRINGS) {
+            out.write(csv(JobRecordFormat.getString(buffer, offset + string)));
+            out.write(',');
+        }
+        out.write(status >= 0 && status < GaswStatus.values().length ? GaswStatus.values()[status].name() : "");
+        out.write(',');
+        out.write(category >= 0 ? StatsCategory.values()[category].name() : "");
+        out.write(',');
+        out.write(Integer.toString(buffer.getInt(offset + JobRecordFormat.EXIT_CODE)));
+        out.write(',');
+        out.write(Long.toString(buffer.getLong(offset + JobRecordFormat.END)));
+        for (int phase = 0; phase < StatsPhase.values().length; phase++) {
+            int time = buffer.getInt(offset + JobRecordFormat.PHASES + phase * 4);
+            out.write(',');
+            if (time >= 0) {
+                out.write(Integer.toString(time));
+            }
+        }
+        out.write(',');
+        out.write(buffer.get(offset + JobRecordFormat.TRUNCATED) != 0 ? "true" : "false");
+        out.write('\n');
+    }
+
+    private static String csv(String value) {
+
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * Converts the record files given as arguments to CSV on the standard
+     * output.
+     */
+    public static void main(String[] args) throws IOException {
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+        out.write(csvHeader());
+        out.write('\n');
+        for (String file : args) {
+            toCsv(Paths.get(file), out);
+        }
+        out.flush();
+    }
+}
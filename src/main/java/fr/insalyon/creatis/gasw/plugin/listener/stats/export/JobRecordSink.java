@@ -0,0 +1,250 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.export;
+
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCategory;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCounters;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes one fixed-size record per finished job to rotating files, for
+ * offline analysis (see {@link JobRecordFormat} and {@link JobRecordReader}).
+ * Callers only enqueue the job timelines; a background thread encodes them
+ * into a direct buffer written with a {@link FileChannel} when it is full
+ * or when the flush interval has elapsed. Jobs are dropped, and counted,
+ * when the queue is full.
+ */
+public class JobRecordSink implements Runnable, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(JobRecordSink.class);
+    private static final int BUFFER_RECORDS = 512;
+    private final Path directory;
+    private final long fileSize;
+    private final long flushInterval;
+    private final BlockingQueue<JobTimeline> queue;
+    private final ByteBuffer buffer;
+    private final LongAdder dropped = new LongAdder();
+    private Thread thread;
+    private volatile boolean running;
+    private FileChannel channel;
+    private long written;
+    private int sequence;
+
+    public JobRecordSink(Path directory, long fileSize, int queueSize, long flushInterval) {
+
+        this.directory = directory;
+        this.fileSize = Math.max(fileSize, JobRecordFormat.HEADER_SIZE + JobRecordFormat.RECORD_SIZE);
+        this.flushInterval = flushInterval;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_RECORDS * JobRecordFormat.RECORD_SIZE);
+    }
+
+    public void start() throws IOException {
+
+        Files.createDirectories(directory);
+        running = true;
+        thread = new Thread(this, "stats-export");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Enqueues a finished job without blocking.
+     */
+    public void offer(JobTimeline job) {
+
+        if (!running || !queue.offer(job)) {
+            dropped.increment();
+        }
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    @Override
+    public void run() {
+
+        List<JobTimeline> batch = new ArrayList<>();
+        long nextFlush = System.currentTimeMillis() + flushInterval;
+        while (running || !queue.isEmpty()) {
+            try {
+                long wait = Math.max(0, nextFlush - System.currentTimeMillis());
+                JobTimeline job = queue.poll(wait, TimeUnit.MILLISECONDS);
+                if (job != null) {
+                    batch.add(job);
+                    queue.drainTo(batch);
+                    for (JobTimeline timeline : batch) {
+                        if (!buffer.hasRemaining()) {
+                            flush();
+                        }
+                        encode(timeline);
+                    }
+                    batch.clear();
+                }
+                if (System.currentTimeMillis() >= nextFlush) {
+                    flush();
+                    nextFlush = System.currentTimeMillis() + flushInterval;
+                }
+            } catch (InterruptedException ex) {
+                break;
+            } catch (IOException ex) {
+                logger.error("Unable to write job records, dropping {} records",
+                        buffer.position() / JobRecordFormat.RECORD_SIZE, ex);
+                buffer.clear();
+                closeChannel();
+            }
+        }
+        try {
+            flush();
+        } catch (IOException ex) {
+            logger.error("Unable to write the last job records", ex);
+        }
+        closeChannel();
+    }
+
+    /**
+     * Stops accepting jobs and writes the queued ones.
+     */
+    @Override
+    public void close() {
+
+        running = false;
+        if (thread == null) {
+            return;
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        if (dropped.sum() > 0) {
+            logger.warn("{} job records were dropped", dropped.sum());
+        }
+    }
+
+    private void encode(JobTimeline job) {
+
+        int offset = buffer.position();
+        StatsCategory category = StatsCounters.classify(job);
+        buffer.putLong(offset + JobRecordFormat.END, job.end());
+        buffer.putInt(offset + JobRecordFormat.EXIT_CODE, job.exitCode());
+        buffer.put(offset + JobRecordFormat.STATUS, (byte) (job.status() != null ? job.status().ordinal() : -1));
+        buffer.put(offset + JobRecordFormat.CATEGORY, (byte) (category != null ? category.ordinal() : -1));
+        buffer.put(offset + JobRecordFormat.TRUNCATED + 1, (byte) 0);
+        for (int phase = 0; phase < StatsCounters.PHASES; phase++) {
+            int time = category != null && StatsCounters.hasPhase(job, category, phase)
+                    ? (int) StatsCounters.phaseTime(job, category, phase) : -1;
+            buffer.putInt(offset + JobRecordFormat.PHASES + phase * 4, time);
+        }
+        String[] strings = {job.id(), job.fileName(), job.simulationID(), job.command(), job.site()};
+        int truncated = 0;
+        for (int i = 0; i < strings.length; i++) {
+            if (JobRecordFormat.putString(buffer, offset + JobRecordFormat.STRINGS[i], strings[i])) {
+                truncated |= 1 << i;
+            }
+        }
+        buffer.put(offset + JobRecordFormat.TRUNCATED, (byte) truncated);
+        buffer.position(offset + JobRecordFormat.RECORD_SIZE);
+    }
+
+    private void flush() throws IOException {
+
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            if (channel == null || written + JobRecordFormat.RECORD_SIZE > fileSize) {
+                rotate();
+            }
+            // only whole records that fit in the current file
+            int records = (int) Math.min(buffer.remaining(), fileSize - written) / JobRecordFormat.RECORD_SIZE;
+            ByteBuffer slice = buffer.slice(buffer.position(), records * JobRecordFormat.RECORD_SIZE);
+            while (slice.hasRemaining()) {
+                written += channel.write(slice);
+            }
+            buffer.position(buffer.position() + records * JobRecordFormat.RECORD_SIZE);
+        }
+        buffer.clear();
+    }
+
+    private void rotate() throws IOException {
+
+        closeChannel();
+        String name = String.format("jobs-%s-%04d.bin",
+                new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()), sequence++);
+        channel = FileChannel.open(directory.resolve(name), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(JobRecordFormat.HEADER_SIZE);
+        header.putInt(JobRecordFormat.HEADER_MAGIC, JobRecordFormat.MAGIC);
+        header.putShort(JobRecordFormat.HEADER_VERSION, JobRecordFormat.VERSION);
+        header.putShort(JobRecordFormat.HEADER_RECORD_SIZE, (short) JobRecordFormat.RECORD_SIZE);
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        written = JobRecordFormat.HEADER_SIZE;
+    }
+
+    private void closeChannel() {
+
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            logger.error("Unable to close the job record file", ex);
+        }
+        channel = null;
+    }
+}
@@ -0,0 +1,436 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.journal;
+
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsAccumulatorStore;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCategory;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCounters;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Append-only, memory-mapped journal of the stats that are buffered in
+ * memory and not yet written to workflows-db, so that they survive a JVM
+ * crash. It holds the completions not processed yet, journaled when they
+ * are enqueued, and the aggregated deltas not written yet, journaled on
+ * each flush together with a watermark: the ID of the last processed
+ * completion, whose own record may come later.
+ *
+ * The file starts with a header holding the current generation, followed
+ * by fixed-size records. A record is only valid if it carries the current
+ * generation, which is written last: truncating the journal is then just
+ * a matter of bumping the generation.
+ *
+ * Simulation IDs longer than a record continue in the following
+ * records, which are validated before the record they extend. IDs longer
+ * than {@link #MAX_ID_LENGTH} bytes are not journaled; the same goes for
+ * job IDs.
+ */
+public class StatsJournal implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatsJournal.class);
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(
+            int[].class, ByteOrder.BIG_ENDIAN);
+
+    private static final int MAGIC = 0x4753544A;
+    private static final int HEADER_SIZE = 64;
+    private static final int RECORD_SIZE = 64;
+    private static final int MAX_ID_LENGTH = 1024;
+    private static final int MAX_LOGGED_IDS = 1000;
+
+    private static final byte SIMULATION = 1;
+    private static final byte DELTA = 2;
+    private static final byte CONTINUATION = 3;
+    private static final byte PENDING = 4;
+    private static final byte WATERMARK = 5;
+
+    // record layout
+    private static final int TYPE = 0;
+    private static final int CATEGORY = 1;
+    private static final int LENGTH = 2;
+    private static final int GENERATION = 4;
+    private static final int INDEX = 8;
+    private static final int COUNT = 12;
+    private static final int PAYLOAD = 16;
+    private static final int CONTINUATION_PAYLOAD = 8;
+    private static final int EXIT_CODE = 8; // pending records have no index
+    private static final int JOB_ID = PAYLOAD + 8;
+
+    // index() results that are not indexes
+    private static final int NO_SPACE = -1;
+    private static final int TOO_LONG = -2;
+
+    /**
+     * Outcome of an append.
+     */
+    public enum Append {
+        /** the record is journaled, or needed not be */
+        APPENDED,
+        /** the journal is full and must be truncated */
+        FULL,
+        /** the ID is too long to be journaled, the record is not */
+        SKIPPED
+    }
+
+    /**
+     * A completion journaled when enqueued and not processed yet.
+     *
+     * @param id sequence number of the completion
+     * @param jobID GASW job ID, as reported in its output
+     * @param exitCode exit code reported by GASW
+     */
+    public record PendingJob(long id, String jobID, int exitCode) {
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final Map<String, Integer> indexes;
+    private final Set<String> skipped = new HashSet<>();
+    private int generation;
+    private int position;
+    private long lastID;
+
+    private StatsJournal(FileChannel channel, MappedByteBuffer buffer) {
+
+        this.channel = channel;
+        this.buffer = buffer;
+        this.indexes = new HashMap<>();
+        if (buffer.getInt(0) != MAGIC) {
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(GENERATION, 1);
+        }
+        this.generation = buffer.getInt(GENERATION);
+        this.position = HEADER_SIZE;
+    }
+
+    public static StatsJournal open(Path path, int size) throws IOException {
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        int capacity = HEADER_SIZE + Math.max(1, (size - HEADER_SIZE) / RECORD_SIZE) * RECORD_SIZE;
+        return new StatsJournal(channel, channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity));
+    }
+
+    /**
+     * Adds the deltas of the current generation to the store, and collects
+     * the completions past the watermark. New records are appended after
+     * the replayed ones.
+     *
+     * @param store store to fill
+     * @param pending list to fill with the completions to process again
+     * @return the number of replayed deltas
+     */
+    public synchronized int replay(StatsAccumulatorStore store, List<PendingJob> pending) {
+
+        Map<Integer, String> simulationIDs = new HashMap<>();
+        // a completion may be journaled twice around a truncation
+        Map<Long, PendingJob> jobs = new LinkedHashMap<>();
+        long watermark = 0;
+        StatsCounters counters = new StatsCounters();
+        int replayed = 0;
+
+        while (position + RECORD_SIZE <= buffer.capacity()
+                && (int) INT.getAcquire(buffer, position + GENERATION) == generation) {
+
+            int index = buffer.getInt(position + INDEX);
+            int records = 1;
+            if (buffer.get(position + TYPE) == SIMULATION) {
+                int length = buffer.getShort(position + LENGTH);
+                records = records(PAYLOAD, length);
+                String simulationID = getString(PAYLOAD, length);
+                if (simulationID == null) {
+                    // torn record, written last before a crash
+                    break;
+                }
+                simulationIDs.put(index, simulationID);
+                indexes.put(simulationID, index);
+
+            } else if (buffer.get(position + TYPE) == PENDING) {
+                int length = buffer.getShort(position + LENGTH);
+                records = records(JOB_ID, length);
+                String jobID = getString(JOB_ID, length);
+                if (jobID == null) {
+                    break;
+                }
+                long id = buffer.getLong(position + PAYLOAD);
+                jobs.put(id, new PendingJob(id, jobID, buffer.getInt(position + EXIT_CODE)));
+                lastID = Math.max(lastID, id);
+
+            } else if (buffer.get(position + TYPE) == WATERMARK) {
+                watermark = Math.max(watermark, buffer.getLong(position + PAYLOAD));
+                lastID = Math.max(lastID, watermark);
+
+            } else if (buffer.get(position + TYPE) == CONTINUATION) {
+                // left over by a torn record
+                break;
+
+            } else if (buffer.get(position + TYPE) == DELTA && simulationIDs.containsKey(index)) {
+                StatsCategory category = StatsCategory.values()[buffer.get(position + CATEGORY)];
+                counters.clear();
+                counters.add(StatsCounters.countSlot(category), buffer.getInt(position + COUNT));
+                for (int phase = 0; phase < StatsCounters.PHASES; phase++) {
+                    counters.add(StatsCounters.countSlot(category) + 1 + phase,
+                            buffer.getLong(position + PAYLOAD + phase * 8));
+                }
+                if (store.add(simulationIDs.get(index), counters)) {
+                    replayed++;
+                } else {
+                    logger.error("Stats store is full, cannot replay delta of {}", simulationIDs.get(index));
+                }
+            }
+            position += records * RECORD_SIZE;
+        }
+        for (PendingJob job : jobs.values()) {
+            if (job.id() > watermark) {
+                pending.add(job);
+            }
+        }
+        return replayed;
+    }
+
+    /**
+     * Gets the highest completion ID found by {@link #replay}, after which
+     * new completions must be numbered.
+     */
+    public synchronized long getLastID() {
+        return lastID;
+    }
+
+    /**
+     * Appends a completion that is not processed yet.
+     *
+     * @return whether the completion was journaled
+     */
+    public synchronized Append appendPending(long id, String jobID, int exitCode) {
+
+        byte[] bytes = jobID.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_ID_LENGTH) {
+            logSkipped(jobID);
+            return Append.SKIPPED;
+        }
+        int records = records(JOB_ID, bytes.length);
+        if (position + records * RECORD_SIZE > buffer.capacity()) {
+            return Append.FULL;
+        }
+        buffer.put(position + TYPE, PENDING);
+        buffer.putShort(position + LENGTH, (short) bytes.length);
+        buffer.putInt(position + EXIT_CODE, exitCode);
+        buffer.putLong(position + PAYLOAD, id);
+        putString(JOB_ID, bytes);
+        commit(records);
+        return Append.APPENDED;
+    }
+
+    /**
+     * Appends the ID of the last processed completion: the completions up
+     * to it are persisted or journaled as deltas.
+     *
+     * @return whether the watermark was journaled
+     */
+    public synchronized Append appendWatermark(long id) {
+
+        if (position + RECORD_SIZE > buffer.capacity()) {
+            return Append.FULL;
+        }
+        buffer.put(position + TYPE, WATERMARK);
+        buffer.putLong(position + PAYLOAD, id);
+        commit(1);
+        return Append.APPENDED;
+    }
+
+    /**
+     * Appends aggregated counters, one record per non-empty category.
+     *
+     * @return whether the counters were journaled
+     */
+    public synchronized Append append(String simulationID, StatsCounters counters) {
+
+        for (StatsCategory category : StatsCategory.values()) {
+            int slot = StatsCounters.countSlot(category);
+            if (counters.get(slot) == 0) {
+                continue;
+            }
+            int index = index(simulationID);
+            if (index < 0) {
+                return index == TOO_LONG ? Append.SKIPPED : Append.FULL;
+            }
+            buffer.put(position + TYPE, DELTA);
+            buffer.put(position + CATEGORY, (byte) category.ordinal());
+            buffer.putInt(position + INDEX, index);
+            buffer.putInt(position + COUNT, (int) counters.get(slot));
+            for (int phase = 0; phase < StatsCounters.PHASES; phase++) {
+                buffer.putLong(position + PAYLOAD + phase * 8, counters.get(slot + 1 + phase));
+            }
+            commit(1);
+        }
+        return Append.APPENDED;
+    }
+
+    /**
+     * Discards every record, once their deltas are persisted.
+     */
+    public synchronized void truncate() {
+
+        generation++;
+        buffer.putInt(GENERATION, generation);
+        position = HEADER_SIZE;
+        indexes.clear();
+    }
+
+    public synchronized boolean isEmpty() {
+        return position == HEADER_SIZE;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    /**
+     * Gets the index of a simulation, journaling its ID first if needed,
+     * and makes sure a delta record fits after it.
+     *
+     * @return the index, NO_SPACE or TOO_LONG
+     */
+    private int index(String simulationID) {
+
+        Integer index = indexes.get(simulationID);
+        if (index != null) {
+            return position + RECORD_SIZE > buffer.capacity() ? NO_SPACE : index;
+        }
+        byte[] id = simulationID.getBytes(StandardCharsets.UTF_8);
+        if (id.length > MAX_ID_LENGTH) {
+            logSkipped(simulationID);
+            return TOO_LONG;
+        }
+        int records = records(PAYLOAD, id.length);
+        if (position + (records + 1) * RECORD_SIZE > buffer.capacity()) {
+            return NO_SPACE;
+        }
+        index = indexes.size();
+        buffer.put(position + TYPE, SIMULATION);
+        buffer.putShort(position + LENGTH, (short) id.length);
+        buffer.putInt(position + INDEX, index);
+        putString(PAYLOAD, id);
+        commit(records);
+        indexes.put(simulationID, index);
+        return index;
+    }
+
+    private void logSkipped(String id) {
+
+        if (skipped.size() < MAX_LOGGED_IDS && skipped.add(id)) {
+            logger.warn("{} is too long to be journaled, its stats are only kept in memory", id);
+        }
+    }
+
+    /**
+     * Number of records taken by a string starting at an offset of its
+     * first record.
+     */
+    private static int records(int offset, int length) {
+
+        int rest = length - (RECORD_SIZE - offset);
+        int size = RECORD_SIZE - CONTINUATION_PAYLOAD;
+        return 1 + (rest > 0 ? (rest + size - 1) / size : 0);
+    }
+
+    /**
+     * Writes a string from an offset of the current record, continuing in
+     * the following records, which are validated right away: the current
+     * record, validated last, makes them part of the journal.
+     */
+    private void putString(int offset, byte[] bytes) {
+
+        int written = Math.min(bytes.length, RECORD_SIZE - offset);
+        buffer.put(position + offset, bytes, 0, written);
+        for (int record = position + RECORD_SIZE; written < bytes.length; record += RECORD_SIZE) {
+            int length = Math.min(RECORD_SIZE - CONTINUATION_PAYLOAD, bytes.length - written);
+            buffer.put(record + TYPE, CONTINUATION);
+            buffer.put(record + CONTINUATION_PAYLOAD, bytes, written, length);
+            INT.setRelease(buffer, record + GENERATION, generation);
+            written += length;
+        }
+    }
+
+    /**
+     * Reads a string written by {@link #putString} at the current record.
+     *
+     * @return the string, or null if its records are not all valid
+     */
+    private String getString(int offset, int length) {
+
+        if (position + records(offset, length) * RECORD_SIZE > buffer.capacity()) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        int read = Math.min(length, RECORD_SIZE - offset);
+        buffer.get(position + offset, bytes, 0, read);
+        for (int record = position + RECORD_SIZE; read < length; record += RECORD_SIZE) {
+            if (buffer.get(record + TYPE) != CONTINUATION
+                    || (int) INT.getAcquire(buffer, record + GENERATION) != generation) {
+                return null;
+            }
+            int size = Math.min(RECORD_SIZE - CONTINUATION_PAYLOAD, length - read);
+            buffer.get(record + CONTINUATION_PAYLOAD, bytes, read, size);
+            read += size;
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private void commit(int records) {
+
+        // the generation is written last and validates the record
+        INT.setRelease(buffer, position + GENERATION, generation);
+        position += records * RECORD_SIZE;
+    }
+}
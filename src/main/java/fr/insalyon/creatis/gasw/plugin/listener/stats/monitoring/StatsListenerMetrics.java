@@ -0,0 +1,379 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.monitoring;
+
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCategory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free counters and latency histograms of the stats listener,
+ * exposed through JMX. When disabled, every method returns immediately
+ * and no time is taken.
+ */
+public class StatsListenerMetrics implements StatsListenerMetricsMBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatsListenerMetrics.class);
+    public final static String OBJECT_NAME = "fr.insalyon.creatis.gasw.plugin.listener.stats:type=StatsListener";
+
+    private final boolean enabled;
+    private final LongAdder[] completions;
+    private final LongAdder unaccounted = new LongAdder();
+    private final LongAdder timelineHits = new LongAdder();
+    private final LongAdder timelineMisses = new LongAdder();
+    private final LongAdder lockWaitTotal = new LongAdder();
+    private final LongAdder daoErrors = new LongAdder();
+    private final LongAdder workflowsDBErrors = new LongAdder();
+    private final LongAdder selectLastjobFailures = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder stragglers = new LongAdder();
+    private final LongAdder statsTimeouts = new LongAdder();
+    private final LongAdder statsDeferred = new LongAdder();
+    private final LatencyRecorder jobLookup = new LatencyRecorder();
+    private final LatencyRecorder statsGet = new LatencyRecorder();
+    private final LatencyRecorder statsUpdate = new LatencyRecorder();
+    private final LatencyRecorder statsAdd = new LatencyRecorder();
+    private final LatencyRecorder lockWait = new LatencyRecorder();
+    private ObjectName objectName;
+
+    public StatsListenerMetrics(boolean enabled) {
+
+        this.enabled = enabled;
+        this.completions = new LongAdder[StatsCategory.values().length];
+        for (int i = 0; i < completions.length; i++) {
+            completions[i] = new LongAdder();
+        }
+    }
+
+    public void register() {
+
+        if (!enabled) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+            objectName = name;
+        } catch (JMException ex) {
+            logger.warn("Unable to register the stats listener MBean", ex);
+        }
+    }
+
+    public void unregister() {
+
+        if (objectName == null) {
+            return;
+        }
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException ex) {
+            logger.warn("Unable to unregister the stats listener MBean", ex);
+        }
+        objectName = null;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @return the start time to pass to the record methods, 0 if disabled
+     */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void completed(StatsCategory category) {
+
+        if (enabled) {
+            (category != null ? completions[category.ordinal()] : unaccounted).increment();
+        }
+    }
+
+    public void timelineHit() {
+        if (enabled) {
+            timelineHits.increment();
+        }
+    }
+
+    public void timelineMiss() {
+        if (enabled) {
+            timelineMisses.increment();
+        }
+    }
+
+    public void jobLookup(long start) {
+        if (enabled) {
+            jobLookup.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    public void statsGet(long start) {
+        if (enabled) {
+            statsGet.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    public void statsUpdate(long start) {
+        if (enabled) {
+            statsUpdate.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    public void statsAdd(long start) {
+        if (enabled) {
+            statsAdd.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    public void lockAcquired(long start) {
+
+        if (enabled) {
+            long nanos = System.nanoTime() - start;
+            lockWaitTotal.add(nanos / 1000);
+            lockWait.recordNanos(nanos);
+        }
+    }
+
+    public void daoError() {
+        if (enabled) {
+            daoErrors.increment();
+        }
+    }
+
+    public void workflowsDBError() {
+        if (enabled) {
+            workflowsDBErrors.increment();
+        }
+    }
+
+    public void selectLastjobFailure() {
+        if (enabled) {
+            selectLastjobFailures.increment();
+        }
+    }
+
+    public void duplicate() {
+        if (enabled) {
+            duplicates.increment();
+        }
+    }
+
+    public void straggler() {
+        if (enabled) {
+            stragglers.increment();
+        }
+    }
+
+    public void statsTimeout() {
+        if (enabled) {
+            statsTimeouts.increment();
+        }
+    }
+
+    public void statsDeferred() {
+        if (enabled) {
+            statsDeferred.increment();
+        }
+    }
+
+    @Override
+    public long getCompletedJobs() {
+        return completions[StatsCategory.COMPLETED.ordinal()].sum();
+    }
+
+    @Override
+    public long getCancelledJobs() {
+        return completions[StatsCategory.CANCELLED.ordinal()].sum();
+    }
+
+    @Override
+    public long getFailedStalledJobs() {
+        return completions[StatsCategory.FAILED_STALLED.ordinal()].sum();
+    }
+
+    @Override
+    public long getFailedInputJobs() {
+        return completions[StatsCategory.FAILED_INPUT.ordinal()].sum();
+    }
+
+    @Override
+    public long getFailedOutputJobs() {
+        return completions[StatsCategory.FAILED_OUTPUT.ordinal()].sum();
+    }
+
+    @Override
+    public long getFailedApplicationJobs() {
+        return completions[StatsCategory.FAILED_APPLICATION.ordinal()].sum();
+    }
+
+    @Override
+    public long getUnaccountedJobs() {
+        return unaccounted.sum();
+    }
+
+    @Override
+    public long getDuplicateJobs() {
+        return duplicates.sum();
+    }
+
+    @Override
+    public long getTimelineHits() {
+        return timelineHits.sum();
+    }
+
+    @Override
+    public long getTimelineMisses() {
+        return timelineMisses.sum();
+    }
+
+    @Override
+    public long getJobLookupCount() {
+        return jobLookup.snapshot().getTotalCount();
+    }
+
+    @Override
+    public long getJobLookupLatencyP50() {
+        return jobLookup.snapshot().getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getJobLookupLatencyP99() {
+        return jobLookup.snapshot().getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getStatsGetLatencyP50() {
+        return statsGet.snapshot().getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getStatsGetLatencyP99() {
+        return statsGet.snapshot().getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getStatsUpdateLatencyP50() {
+        return statsUpdate.snapshot().getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getStatsUpdateLatencyP99() {
+        return statsUpdate.snapshot().getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getStatsAddLatencyP50() {
+        return statsAdd.snapshot().getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getStatsAddLatencyP99() {
+        return statsAdd.snapshot().getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getLockWaitTotal() {
+        return lockWaitTotal.sum();
+    }
+
+    @Override
+    public long getLockWaitP99() {
+        return lockWait.snapshot().getValueAtPercentile(99);
+    }
+
+    @Override
+    public long getDAOErrors() {
+        return daoErrors.sum();
+    }
+
+    @Override
+    public long getWorkflowsDBErrors() {
+        return workflowsDBErrors.sum();
+    }
+
+    @Override
+    public long getSelectLastjobFailures() {
+        return selectLastjobFailures.sum();
+    }
+
+    @Override
+    public long getStragglers() {
+        return stragglers.sum();
+    }
+
+    @Override
+    public long getStatsTimeouts() {
+        return statsTimeouts.sum();
+    }
+
+    @Override
+    public long getStatsDeferred() {
+        return statsDeferred.sum();
+    }
+
+    @Override
+    public void reset() {
+
+        for (LongAdder completion : completions) {
+            completion.reset();
+        }
+        unaccounted.reset();
+        duplicates.reset();
+        timelineHits.reset();
+        timelineMisses.reset();
+        lockWaitTotal.reset();
+        daoErrors.reset();
+        workflowsDBErrors.reset();
+        selectLastjobFailures.reset();
+        stragglers.reset();
+        statsTimeouts.reset();
+        statsDeferred.reset();
+        jobLookup.reset();
+        statsGet.reset();
+        statsUpdate.reset();
+        statsAdd.reset();
+        lockWait.reset();
+    }
+}
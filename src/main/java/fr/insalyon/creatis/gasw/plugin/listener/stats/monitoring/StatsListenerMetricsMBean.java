@@ -0,0 +1,96 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.monitoring;
+
+/**
+ * Runtime metrics of the stats listener. Latencies are in microseconds.
+ */
+public interface StatsListenerMetricsMBean {
+
+    public long getCompletedJobs();
+
+    public long getCancelledJobs();
+
+    public long getFailedStalledJobs();
+
+    public long getFailedInputJobs();
+
+    public long getFailedOutputJobs();
+
+    public long getFailedApplicationJobs();
+
+    public long getUnaccountedJobs();
+
+    public long getDuplicateJobs();
+
+    public long getTimelineHits();
+
+    public long getTimelineMisses();
+
+    public long getJobLookupCount();
+
+    public long getJobLookupLatencyP50();
+
+    public long getJobLookupLatencyP99();
+
+    public long getStatsGetLatencyP50();
+
+    public long getStatsGetLatencyP99();
+
+    public long getStatsUpdateLatencyP50();
+
+    public long getStatsUpdateLatencyP99();
+
+    public long getStatsAddLatencyP50();
+
+    public long getStatsAddLatencyP99();
+
+    public long getLockWaitTotal();
+
+    public long getLockWaitP99();
+
+    public long getDAOErrors();
+
+    public long getWorkflowsDBErrors();
+
+    public long getSelectLastjobFailures();
+
+    public long getStragglers();
+
+    public long getStatsTimeouts();
+
+    public long getStatsDeferred();
+
+    public void reset();
+}
@@ -0,0 +1,182 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.monitoring;
+
+import fr.insalyon.creatis.gasw.execution.GaswStatus;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.LogHistogram;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCategory;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCounters;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsKey;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsPhase;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Detects stragglers: running jobs whose execution time exceeds a
+ * percentile of the execution times of the completed jobs of the same
+ * simulation and command. Execution times are kept in a fixed-size
+ * {@link LogHistogram} per key, so an update is O(1) and a key takes at
+ * most {@link LogHistogram#BUCKETS} counters. Once the capacity is
+ * reached, new commands share the key of their simulation.
+ */
+public class StragglerDetector {
+
+    private static final Logger logger = LoggerFactory.getLogger(StragglerDetector.class);
+    private final Map<StatsKey, Sketch> sketches = new ConcurrentHashMap<>();
+    private final Set<String> reported = ConcurrentHashMap.newKeySet();
+    private final List<StragglerListener> listeners = new CopyOnWriteArrayList<>();
+    private final StatsListenerMetrics metrics;
+    private final double percentile;
+    private final long minSamples;
+    private final int capacity;
+
+    public StragglerDetector(StatsListenerMetrics metrics, double percentile, long minSamples, int capacity) {
+
+        this.metrics = metrics;
+        this.percentile = percentile;
+        this.minSamples = minSamples;
+        this.capacity = capacity;
+        listeners.add((job, elapsed, threshold) -> logger.warn(
+                "Job {} ({}) of {} has been running for {} s, over the p{} of its peers ({} s)",
+                job.id(), job.fileName(), job.simulationID(), elapsed, percentile, threshold));
+    }
+
+    public void addListener(StragglerListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Adds the execution time of a finished job to the sketch of its peers.
+     */
+    public void record(JobTimeline job) {
+
+        if (job.id() != null) {
+            reported.remove(job.id());
+        }
+        if (StatsCounters.classify(job) != StatsCategory.COMPLETED) {
+            return;
+        }
+        long time = StatsCounters.phaseTime(job, StatsCategory.COMPLETED, StatsPhase.EXECUTION.ordinal());
+        Sketch sketch = sketches.get(key(job));
+        if (sketch == null) {
+            StatsKey key = sketches.size() < capacity
+                    ? key(job) : key(job).withoutCommand();
+            sketch = sketches.computeIfAbsent(key, k -> new Sketch());
+        }
+        sketch.record(time);
+    }
+
+    /**
+     * Checks running jobs against their peers, notifying each straggler
+     * once. The stragglers that are no longer among the running jobs are
+     * forgotten, as they may leave without being recorded.
+     *
+     * @return the number of new stragglers
+     */
+    public int scan(Iterable<JobTimeline> jobs, long now) {
+
+        int detected = 0;
+        Set<String> running = new HashSet<>();
+        for (JobTimeline job : jobs) {
+            if (job.status() != GaswStatus.RUNNING || job.running() == JobTimeline.NONE
+                    || job.id() == null) {
+                continue;
+            }
+            running.add(job.id());
+            if (reported.contains(job.id())) {
+                continue;
+            }
+            Sketch sketch = sketches.get(key(job));
+            if (sketch == null) {
+                sketch = sketches.get(key(job).withoutCommand());
+            }
+            long threshold = sketch != null ? sketch.threshold(percentile, minSamples) : -1;
+            long elapsed = (now - job.running()) / 1000;
+            if (threshold >= 0 && elapsed > threshold && reported.add(job.id())) {
+                detected++;
+                metrics.straggler();
+                for (StragglerListener listener : listeners) {
+                    try {
+                        listener.stragglerDetected(job, elapsed, threshold);
+                    } catch (RuntimeException ex) {
+                        logger.error("Straggler listener failed", ex);
+                    }
+                }
+            }
+        }
+        reported.retainAll(running);
+        return detected;
+    }
+
+    /**
+     * Forgets the sketches without completions for the given delay.
+     */
+    public void expire(long now, long idle) {
+
+        for (StatsKey key : sketches.keySet()) {
+            sketches.computeIfPresent(key, (k, sketch) -> sketch.lastSeen < now - idle ? null : sketch);
+        }
+    }
+
+    public int size() {
+        return sketches.size();
+    }
+
+    private static StatsKey key(JobTimeline job) {
+        return StatsKey.of(job).withoutSite();
+    }
+
+    private static class Sketch {
+
+        private final LogHistogram histogram = new LogHistogram();
+        private volatile long lastSeen = System.currentTimeMillis();
+
+        private synchronized void record(long time) {
+            histogram.record(Math.min(time, LogHistogram.MAX_VALUE));
+            lastSeen = System.currentTimeMillis();
+        }
+
+        private synchronized long threshold(double percentile, long minSamples) {
+            return histogram.getTotalCount() >= minSamples ? histogram.getValueAtPercentile(percentile) : -1;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.tools;
+
+import fr.insalyon.creatis.gasw.dao.DAOException;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.StatsConfiguration;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCounters;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.dao.StatsJobDAO;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.dao.StatsPluginDAOFactory;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.WorkflowsDBException;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.bean.Stats;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.dao.StatsDAO;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.dao.WorkflowsDBDAOException;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.dao.WorkflowsDBDAOFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rebuilds the Stats rows from the GASW jobs table, e.g. after the listener
+ * was down or after a classification fix. Jobs are streamed in bounded
+ * chunks that are aggregated in parallel with the listener's accounting
+ * rules, so memory only grows with the number of simulations.
+ *
+ * Jobs are accounted as by the listener: among the jobs of a file with
+ * the same exit code, only the one that ended last. Simulations being
+ * executed should not be backfilled, as the listener keeps updating their
+ * rows: they are skipped when all simulations are backfilled.
+ */
+public class StatsBackfill {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatsBackfill.class);
+    private final StatsJobDAO jobDAO;
+    private final StatsDAO statsDAO;
+    private final int chunkSize;
+    private final int threads;
+
+    public StatsBackfill(StatsJobDAO jobDAO, StatsDAO statsDAO, int chunkSize, int threads) {
+        this.jobDAO = jobDAO;
+        this.statsDAO = statsDAO;
+        this.chunkSize = chunkSize;
+        this.threads = threads;
+    }
+
+    /**
+     * Recomputes the counters of some simulations from their jobs.
+     *
+     * @param simulationIDs simulations to recompute, all if empty
+     * @return the counters by simulation
+     */
+    public Map<String, StatsCounters> aggregate(Collection<String> simulationIDs) throws DAOException {
+
+        ConcurrentMap<String, StatsCounters> totals = new ConcurrentHashMap<>();
+        AtomicLong jobs = new AtomicLong();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        // bounds the number of chunks held in memory
+        Semaphore inFlight = new Semaphore(threads * 2);
+        try {
+            jobDAO.scrollFinished(simulationIDs, chunkSize, chunk -> {
+                inFlight.acquireUninterruptibly();
+                executor.execute(() -> {
+                    try {
+                        fold(chunk, totals);
+                        long total = jobs.addAndGet(chunk.size());
+                        if (total / chunkSize % 100 == 0) {
+                            logger.info("Aggregated {} jobs", total);
+                        }
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            });
+        } finally {
+            awaitTermination(executor);
+        }
+        logger.info("Aggregated {} jobs of {} simulations", jobs.get(), totals.size());
+        return totals;
+    }
+
+    /**
+     * Overwrites the Stats rows with recomputed counters, in parallel
+     * batches.
+     *
+     * @return the number of rows that could not be written
+     */
+    public int write(Map<String, StatsCounters> totals) {
+
+        List<String> simulationIDs = new ArrayList<>(totals.keySet());
+        AtomicInteger errors = new AtomicInteger();
+        AtomicInteger written = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        int batchSize = Math.max(1, simulationIDs.size() / (threads * 4));
+
+        for (int from = 0; from < simulationIDs.size(); from += batchSize) {
+            List<String> batch = simulationIDs.subList(from, Math.min(from + batchSize, simulationIDs.size()));
+            executor.execute(() -> {
+                for (String simulationID : batch) {
+                    try {
+                        Stats stats = statsDAO.get(simulationID);
+                        if (stats == null) {
+                            stats = new Stats(simulationID);
+                            totals.get(simulationID).setTo(stats);
+                            statsDAO.add(stats);
+                        } else {
+                            totals.get(simulationID).setTo(stats);
+                            statsDAO.update(stats);
+                        }
+                    } catch (WorkflowsDBDAOException ex) {
+                        errors.incrementAndGet();
+                        logger.error("Unable to write stats of {}", simulationID, ex);
+                    }
+                }
+                logger.info("Wrote stats of {}/{} simulations",
+                        written.addAndGet(batch.size()), simulationIDs.size());
+            });
+        }
+        awaitTermination(executor);
+        return errors.get();
+    }
+
+    private void fold(List<JobTimeline> chunk, ConcurrentMap<String, StatsCounters> totals) {
+
+        Map<String, StatsCounters> local = new HashMap<>();
+        for (JobTimeline job : chunk) {
+            local.computeIfAbsent(job.simulationID(), k -> new StatsCounters()).record(job);
+        }
+        for (Map.Entry<String, StatsCounters> entry : local.entrySet()) {
+            totals.merge(entry.getKey(), entry.getValue(), (total, delta) -> {
+                total.add(delta);
+                return total;
+            });
+        }
+    }
+
+    private void awaitTermination(ExecutorService executor) {
+
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Rebuilds the Stats rows of the simulations given as arguments, or of
+     * every simulation that is not being executed without arguments. Must
+     * be run from the GASW directory, to read its database settings.
+     */
+    public static void main(String[] args) {
+
+        StatsConfiguration conf = StatsConfiguration.getInstance();
+        WorkflowsDBDAOFactory workflowsDBDAOFactory = null;
+        int status = 0;
+        try {
+            workflowsDBDAOFactory = new WorkflowsDBDAOFactory();
+            StatsJobDAO jobDAO = StatsPluginDAOFactory.getInstance().getJobDAO();
+            StatsBackfill backfill = new StatsBackfill(jobDAO, workflowsDBDAOFactory.getStatsDAO(),
+                    conf.getBackfillChunkSize(), conf.getBackfillThreads());
+
+            // the listener keeps updating the rows of running simulations
+            List<String> running = args.length == 0 ? jobDAO.getActiveSimulationIDs() : List.of();
+            Map<String, StatsCounters> totals = backfill.aggregate(Arrays.asList(args));
+            int aggregated = totals.size();
+            totals.keySet().removeAll(running);
+            if (totals.size() < aggregated) {
+                logger.info("Skipped {} simulations being executed", aggregated - totals.size());
+            }
+            int errors = backfill.write(totals);
+            if (errors > 0) {
+                logger.error("Stats of {} simulations could not be written", errors);
+                status = 1;
+            }
+
+        } catch (DAOException | WorkflowsDBDAOException | WorkflowsDBException ex) {
+            logger.error("Error", ex);
+            status = 1;
+        } finally {
+            if (workflowsDBDAOFactory != null) {
+                workflowsDBDAOFactory.close();
+            }
+        }
+        System.exit(status);
+    }
+}
@@ -0,0 +1,261 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.tools;
+
+import fr.insalyon.creatis.gasw.dao.DAOException;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.StatsConfiguration;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCategory;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCounters;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsPhase;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.dao.StatsJobDAO;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.dao.StatsPluginDAOFactory;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.WorkflowsDBException;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.bean.Stats;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.dao.StatsDAO;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.dao.WorkflowsDBDAOException;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.dao.WorkflowsDBDAOFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks the Stats rows against the GASW jobs table, and optionally fixes
+ * them. Each simulation is recomputed with a single grouped query, on a
+ * virtual thread; the number of simulations checked at the same time is
+ * capped to spare the database connections.
+ *
+ * Jobs are accounted as by {@link StatsBackfill}. Rows are only repaired
+ * when a count differs, as times may drift with rounding alone, and the
+ * stored times within the rounding tolerance are kept. Simulations being
+ * executed may be reported while the listener catches up, and should not
+ * be repaired: they are skipped when all simulations are checked.
+ */
+public class StatsReconciler {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatsReconciler.class);
+    private final StatsJobDAO jobDAO;
+    private final StatsDAO statsDAO;
+    private final int parallelism;
+    private final boolean repair;
+
+    /**
+     * A Stats row that does not match the jobs table.
+     *
+     * @param simulationID simulation
+     * @param stored counters of the Stats row, empty if there is none
+     * @param expected counters recomputed from the jobs
+     */
+    public record Drift(String simulationID, StatsCounters stored, StatsCounters expected) {
+    }
+
+    public StatsReconciler(StatsJobDAO jobDAO, StatsDAO statsDAO, int parallelism, boolean repair) {
+        this.jobDAO = jobDAO;
+        this.statsDAO = statsDAO;
+        this.parallelism = parallelism;
+        this.repair = repair;
+    }
+
+    /**
+     * Checks the Stats rows of some simulations, and fixes them if repair
+     * is enabled.
+     *
+     * @param simulationIDs simulations to check, all but the running ones if empty
+     * @return the rows that did not match
+     */
+    public List<Drift> reconcile(Collection<String> simulationIDs) throws DAOException {
+
+        Collection<String> checked = simulationIDs;
+        if (simulationIDs.isEmpty()) {
+            // the listener keeps updating the rows of running simulations
+            Set<String> active = new HashSet<>(jobDAO.getActiveSimulationIDs());
+            checked = jobDAO.getSimulationIDs().stream()
+                    .filter(simulationID -> !active.contains(simulationID))
+                    .toList();
+        }
+        Queue<Drift> drifts = new ConcurrentLinkedQueue<>();
+        AtomicInteger errors = new AtomicInteger();
+        Semaphore permits = new Semaphore(parallelism);
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (String simulationID : checked) {
+                executor.execute(() -> {
+                    permits.acquireUninterruptibly();
+                    try {
+                        Drift drift = check(simulationID);
+                        if (drift != null) {
+                            drifts.add(drift);
+                        }
+                    } catch (DAOException | WorkflowsDBDAOException ex) {
+                        errors.incrementAndGet();
+                        logger.error("Unable to reconcile stats of {}", simulationID, ex);
+                    } finally {
+                        permits.release();
+                    }
+                });
+            }
+        }
+        logger.info("Checked stats of {} simulations: {} drifted, {} could not be checked",
+                checked.size(), drifts.size(), errors.get());
+        return new ArrayList<>(drifts);
+    }
+
+    private Drift check(String simulationID) throws DAOException, WorkflowsDBDAOException {
+
+        StatsCounters expected = jobDAO.aggregateFinished(simulationID);
+        Stats stats = statsDAO.get(simulationID);
+        StatsCounters stored = stats != null ? StatsCounters.of(stats) : new StatsCounters();
+
+        List<String> differences = differences(stored, expected);
+        if (differences.isEmpty()) {
+            return null;
+        }
+        logger.warn("Stats of {} drifted: {}", simulationID, String.join(", ", differences));
+        // times alone may drift with rounding, only missed or duplicated jobs are repaired
+        if (repair && !sameCounts(stored, expected)) {
+            StatsCounters repaired = repaired(stored, expected);
+            if (stats == null) {
+                stats = new Stats(simulationID);
+                repaired.setTo(stats);
+                statsDAO.add(stats);
+            } else {
+                repaired.setTo(stats);
+                statsDAO.update(stats);
+            }
+        }
+        return new Drift(simulationID, stored, expected);
+    }
+
+    /**
+     * Compares the counters of each category. Counts must be equal, while
+     * times may differ by a second per job, as they are rounded per job by
+     * the listener and possibly by the database.
+     */
+    private static List<String> differences(StatsCounters stored, StatsCounters expected) {
+
+        List<String> differences = new ArrayList<>();
+        for (StatsCategory category : StatsCategory.values()) {
+            long count = expected.getCount(category);
+            if (stored.getCount(category) != count) {
+                differences.add(category + " " + stored.getCount(category) + " instead of " + count);
+            }
+            for (StatsPhase phase : StatsPhase.values()) {
+                if (!withinTolerance(stored, expected, category, phase)) {
+                    differences.add(category + " " + phase + " " + stored.getTime(category, phase)
+                            + "s instead of " + expected.getTime(category, phase) + "s");
+                }
+            }
+        }
+        return differences;
+    }
+
+    private static boolean withinTolerance(StatsCounters stored, StatsCounters expected,
+            StatsCategory category, StatsPhase phase) {
+
+        long tolerance = Math.max(stored.getCount(category), expected.getCount(category));
+        return Math.abs(stored.getTime(category, phase) - expected.getTime(category, phase)) <= tolerance;
+    }
+
+    private static boolean sameCounts(StatsCounters stored, StatsCounters expected) {
+
+        for (StatsCategory category : StatsCategory.values()) {
+            if (stored.getCount(category) != expected.getCount(category)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Recomputed counters, keeping the stored times that are within the
+     * rounding tolerance.
+     */
+    private static StatsCounters repaired(StatsCounters stored, StatsCounters expected) {
+
+        StatsCounters repaired = new StatsCounters();
+        repaired.add(expected);
+        for (StatsCategory category : StatsCategory.values()) {
+            for (StatsPhase phase : StatsPhase.values()) {
+                if (withinTolerance(stored, expected, category, phase)) {
+                    repaired.add(StatsCounters.timeSlot(category, phase),
+                            stored.getTime(category, phase) - expected.getTime(category, phase));
+                }
+            }
+        }
+        return repaired;
+    }
+
+    /**
+     * Checks the Stats rows of the simulations given as arguments, or of
+     * every simulation without arguments, and fixes them with --repair.
+     * Must be run from the GASW directory, to read its database settings.
+     */
+    public static void main(String[] args) {
+
+        List<String> simulationIDs = new ArrayList<>(Arrays.asList(args));
+        boolean repair = simulationIDs.remove("--repair");
+        WorkflowsDBDAOFactory workflowsDBDAOFactory = null;
+        int status = 0;
+        try {
+            workflowsDBDAOFactory = new WorkflowsDBDAOFactory();
+            StatsReconciler reconciler = new StatsReconciler(StatsPluginDAOFactory.getInstance().getJobDAO(),
+                    workflowsDBDAOFactory.getStatsDAO(), StatsConfiguration.getInstance().getReconcileParallelism(),
+                    repair);
+
+            if (!reconciler.reconcile(simulationIDs).isEmpty() && !repair) {
+                status = 2;
+            }
+
+        } catch (DAOException | WorkflowsDBDAOException | WorkflowsDBException ex) {
+            logger.error("Error", ex);
+            status = 1;
+        } finally {
+            if (workflowsDBDAOFactory != null) {
+                workflowsDBDAOFactory.close();
+            }
+        }
+        System.exit(status);
+    }
+}
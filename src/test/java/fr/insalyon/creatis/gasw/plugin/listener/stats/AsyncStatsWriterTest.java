@@ -0,0 +1,203 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats;
+
+import fr.insalyon.creatis.gasw.GaswException;
+import fr.insalyon.creatis.gasw.GaswExitCode;
+import fr.insalyon.creatis.gasw.GaswOutput;
+import fr.insalyon.creatis.gasw.dao.DAOException;
+import fr.insalyon.creatis.gasw.execution.GaswStatus;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsAccumulatorStore;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCategory;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCounters;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.monitoring.StatsListenerMetrics;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.bean.Stats;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.dao.StatsDAO;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The write-behind pipeline must account every job it accepted, even when
+ * the jobs database fails or the writer is stopped while jobs are being
+ * submitted.
+ */
+public class AsyncStatsWriterTest {
+
+    private static final String SIMULATION_ID = "simulation-0";
+    private static final int JOBS = 20_000;
+
+    private final Map<String, JobTimeline> jobs = new HashMap<>();
+    private final MapStatsDAO statsDAO = new MapStatsDAO();
+    private StatsListener listener;
+    private StatsDAOGuard guard;
+    private AsyncStatsWriter writer;
+
+    @BeforeEach
+    public void setUp() {
+
+        for (int i = 0; i < JOBS; i++) {
+            long queued = 1_000_000L * (i + 1);
+            JobTimeline job = new JobTimeline("id-" + i, "job-" + i, SIMULATION_ID, "app.sh", null,
+                    GaswStatus.COMPLETED, 0, queued, queued + 1_000, queued + 3_000, queued + 7_000, queued + 15_000);
+            jobs.put(job.fileName(), job);
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+
+        guard.shutdown();
+        listener.terminate();
+    }
+
+    private void start(MapJobDAO jobDAO) throws GaswException {
+
+        listener = new StatsListener();
+        listener.load(statsDAO, jobDAO);
+        StatsListenerMetrics metrics = new StatsListenerMetrics(false);
+        StatsAccumulatorStore store = new StatsAccumulatorStore(64);
+        guard = new StatsDAOGuard(statsDAO, new StripedLocks(4), metrics,
+                new StatsCircuitBreaker(5, 1000), store, 2, 10_000);
+        writer = new AsyncStatsWriter(listener, guard, metrics, store, null, 64, 16, 20);
+        writer.start();
+    }
+
+    private static GaswOutput output(int i) {
+        return new GaswOutput("job-" + i + ".jdl", GaswExitCode.SUCCESS, "", null, null, null, null, null);
+    }
+
+    private long completed() {
+
+        Stats stats = statsDAO.get(SIMULATION_ID);
+        return stats != null ? StatsCounters.of(stats).getCount(StatsCategory.COMPLETED) : 0;
+    }
+
+    @Test
+    public void failedLookupsAreRetried() throws Exception {
+
+        AtomicInteger failures = new AtomicInteger(3);
+        start(new MapJobDAO(jobs) {
+            @Override
+            public Map<String, List<JobTimeline>> getByFilenamesAndExitCode(Collection<String> fileNames,
+                    GaswExitCode exitCode) throws DAOException {
+
+                if (failures.getAndDecrement() > 0) {
+                    throw new DAOException("Jobs database unavailable");
+                }
+                return super.getByFilenamesAndExitCode(fileNames, exitCode);
+            }
+        });
+        for (int i = 0; i < 500; i++) {
+            writer.submit(output(i));
+        }
+        writer.shutdown();
+
+        assertTrue(failures.get() < 0);
+        assertEquals(500, completed());
+    }
+
+    @Test
+    public void jobsAcceptedBeforeShutdownAreAllCounted() throws Exception {
+
+        start(new MapJobDAO(jobs));
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int first = t;
+                results.add(executor.submit(() -> {
+                    int accepted = 0;
+                    for (int i = first; i < JOBS; i += threads) {
+                        try {
+                            writer.submit(output(i));
+                            accepted++;
+                        } catch (GaswException ex) {
+                            break;
+                        }
+                    }
+                    return accepted;
+                }));
+            }
+            TimeUnit.MILLISECONDS.sleep(20);
+            writer.shutdown();
+
+            int accepted = 0;
+            for (Future<Integer> result : results) {
+                accepted += result.get(1, TimeUnit.MINUTES);
+            }
+            assertEquals(accepted, completed());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static class MapStatsDAO implements StatsDAO {
+
+        private final Map<String, Stats> rows = new ConcurrentHashMap<>();
+
+        @Override
+        public void add(Stats stats) {
+            rows.put(stats.getWorkflowID(), stats);
+        }
+
+        @Override
+        public void update(Stats stats) {
+            rows.put(stats.getWorkflowID(), stats);
+        }
+
+        @Override
+        public Stats get(String simulationID) {
+            return rows.get(simulationID);
+        }
+    }
+}
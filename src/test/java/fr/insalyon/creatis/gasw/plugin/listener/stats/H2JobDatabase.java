@@ -0,0 +1,105 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats;
+
+import fr.insalyon.creatis.gasw.bean.Job;
+import fr.insalyon.creatis.gasw.bean.Node;
+import fr.insalyon.creatis.gasw.execution.GaswStatus;
+import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+
+import java.util.Date;
+import java.util.List;
+
+/**
+ * In-memory H2 database standing in for the GASW jobs database.
+ */
+public class H2JobDatabase {
+
+    private H2JobDatabase() {
+    }
+
+    public static SessionFactory create(String name) {
+
+        return new Configuration()
+                .setProperty(AvailableSettings.JAKARTA_JDBC_URL, "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1")
+                .setProperty(AvailableSettings.JAKARTA_JDBC_USER, "sa")
+                .setProperty(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+                .setProperty(AvailableSettings.POOL_SIZE, "16")
+                .addAnnotatedClass(Job.class)
+                .addAnnotatedClass(Node.class)
+                .buildSessionFactory();
+    }
+
+    public static void insert(SessionFactory sessionFactory, List<Job> jobs) {
+
+        try (StatelessSession session = sessionFactory.openStatelessSession()) {
+            Transaction transaction = session.beginTransaction();
+            for (Job job : jobs) {
+                session.insert(job);
+            }
+            transaction.commit();
+        }
+    }
+
+    /**
+     * Creates a job whose phases start at the given times, in milliseconds.
+     * A time of 0 leaves the corresponding date unset.
+     */
+    public static Job newJob(String id, String simulationID, String fileName, String command,
+            GaswStatus status, int exitCode, long queued, long download, long running,
+            long upload, long end) {
+
+        Job job = new Job();
+        job.setId(id);
+        job.setSimulationID(simulationID);
+        job.setFileName(fileName);
+        job.setCommand(command);
+        job.setStatus(status);
+        job.setExitCode(exitCode);
+        job.setQueued(date(queued));
+        job.setDownload(date(download));
+        job.setRunning(date(running));
+        job.setUpload(date(upload));
+        job.setEnd(date(end));
+        return job;
+    }
+
+    private static Date date(long time) {
+        return time != 0 ? new Date(time) : null;
+    }
+}
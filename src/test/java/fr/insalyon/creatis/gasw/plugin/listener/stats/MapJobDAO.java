@@ -0,0 +1,96 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats;
+
+import fr.insalyon.creatis.gasw.GaswExitCode;
+import fr.insalyon.creatis.gasw.dao.DAOException;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCounters;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.dao.StatsJobDAO;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Jobs database holding one job per file, for the listener tests.
+ */
+class MapJobDAO implements StatsJobDAO {
+
+    private final Map<String, JobTimeline> jobs;
+
+    MapJobDAO(Map<String, JobTimeline> jobs) {
+        this.jobs = jobs;
+    }
+
+    @Override
+    public List<JobTimeline> getByFilenameAndExitCode(String fileName, GaswExitCode exitCode) {
+        return List.of(jobs.get(fileName));
+    }
+
+    @Override
+    public Map<String, List<JobTimeline>> getByFilenamesAndExitCode(Collection<String> fileNames,
+            GaswExitCode exitCode) throws DAOException {
+
+        Map<String, List<JobTimeline>> found = new HashMap<>();
+        for (String fileName : fileNames) {
+            found.put(fileName, List.of(jobs.get(fileName)));
+        }
+        return found;
+    }
+
+    @Override
+    public void scrollFinished(Collection<String> simulationIDs, int chunkSize,
+            Consumer<List<JobTimeline>> consumer) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public List<String> getSimulationIDs() {
+        return jobs.values().stream().map(JobTimeline::simulationID).distinct().toList();
+    }
+
+    @Override
+    public List<String> getActiveSimulationIDs() {
+        return List.of();
+    }
+
+    @Override
+    public StatsCounters aggregateFinished(String simulationID) {
+        throw new UnsupportedOperationException();
+    }
+}
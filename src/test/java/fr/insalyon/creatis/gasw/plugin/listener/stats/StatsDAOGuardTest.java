@@ -0,0 +1,137 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats;
+
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsAccumulatorStore;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCategory;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCounters;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.monitoring.StatsListenerMetrics;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.bean.Stats;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.dao.StatsDAO;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.dao.WorkflowsDBDAOException;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A write that times out must be reported to the circuit breaker once,
+ * whatever the outcome of the call that goes on.
+ */
+public class StatsDAOGuardTest {
+
+    private static final String SIMULATION_ID = "simulation-0";
+
+    /**
+     * Holds every call until released, then fails or succeeds.
+     */
+    private static class SlowStatsDAO implements StatsDAO {
+
+        private final CountDownLatch release = new CountDownLatch(1);
+        private final boolean fail;
+
+        SlowStatsDAO(boolean fail) {
+            this.fail = fail;
+        }
+
+        @Override
+        public Stats get(String simulationID) throws WorkflowsDBDAOException {
+
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            if (fail) {
+                throw new WorkflowsDBDAOException("Database down");
+            }
+            return null;
+        }
+
+        @Override
+        public void add(Stats stats) {
+        }
+
+        @Override
+        public void update(Stats stats) {
+        }
+    }
+
+    private static StatsCounters counters() {
+
+        StatsCounters counters = new StatsCounters();
+        counters.add(StatsCounters.countSlot(StatsCategory.COMPLETED), 1);
+        return counters;
+    }
+
+    private static StatsDAOGuard guard(StatsDAO statsDAO, StatsCircuitBreaker breaker, StatsAccumulatorStore backlog) {
+        return new StatsDAOGuard(statsDAO, new StripedLocks(4), new StatsListenerMetrics(false),
+                breaker, backlog, 2, 50);
+    }
+
+    @Test
+    public void lateFailureIsNotCountedTwice() {
+
+        SlowStatsDAO statsDAO = new SlowStatsDAO(true);
+        StatsCircuitBreaker breaker = new StatsCircuitBreaker(2, 60_000);
+        StatsAccumulatorStore backlog = new StatsAccumulatorStore(16);
+        StatsDAOGuard guard = guard(statsDAO, breaker, backlog);
+
+        assertFalse(guard.write(SIMULATION_ID, counters()));
+        statsDAO.release.countDown();
+        assertTrue(guard.awaitTermination(10_000));
+
+        assertEquals(StatsCircuitBreaker.State.CLOSED, breaker.getState());
+        assertNotNull(backlog.get(SIMULATION_ID));
+    }
+
+    @Test
+    public void lateSuccessDoesNotCloseTheBreaker() {
+
+        SlowStatsDAO statsDAO = new SlowStatsDAO(false);
+        StatsCircuitBreaker breaker = new StatsCircuitBreaker(1, 60_000);
+        StatsDAOGuard guard = guard(statsDAO, breaker, new StatsAccumulatorStore(16));
+
+        assertFalse(guard.write(SIMULATION_ID, counters()));
+        assertEquals(StatsCircuitBreaker.State.OPEN, breaker.getState());
+        statsDAO.release.countDown();
+        assertTrue(guard.awaitTermination(10_000));
+
+        assertEquals(StatsCircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
@@ -0,0 +1,77 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats;
+
+import fr.insalyon.creatis.gasw.execution.GaswStatus;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
+
+/**
+ * Job timelines shared by the tests. Dates are offsets from {@link #Q}.
+ */
+public final class StatsFixtures {
+
+    public static final long Q = 1_700_000_000_000L;
+    public static final long NONE = JobTimeline.NONE;
+
+    private StatsFixtures() {
+    }
+
+    /**
+     * Timeline of a job of the "app" command run on "site-1".
+     */
+    public static JobTimeline job(String id, String fileName, String simulationID, GaswStatus status,
+            int exitCode, long queued, long download, long running, long upload, long end) {
+
+        return new JobTimeline(id, fileName, simulationID, "app", "site-1", status, exitCode,
+                queued, download, running, upload, end);
+    }
+
+    /**
+     * Timeline of a job queued at {@link #Q}, for the tests that only look
+     * at its status and dates.
+     */
+    public static JobTimeline job(GaswStatus status, int exitCode,
+            long download, long running, long upload, long end) {
+        return job("id", "job", "simulation", status, exitCode, Q, download, running, upload, end);
+    }
+
+    /**
+     * Timeline of a job that completed at Q + 4 s, each phase lasting a
+     * second.
+     */
+    public static JobTimeline completed(String id, String fileName, String simulationID) {
+        return job(id, fileName, simulationID, GaswStatus.COMPLETED, 0, Q, Q + 1_000, Q + 2_000, Q + 3_000, Q + 4_000);
+    }
+}
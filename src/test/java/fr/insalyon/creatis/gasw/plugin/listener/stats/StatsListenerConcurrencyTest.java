@@ -0,0 +1,211 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats;
+
+import fr.insalyon.creatis.gasw.GaswExitCode;
+import fr.insalyon.creatis.gasw.GaswOutput;
+import fr.insalyon.creatis.gasw.execution.GaswStatus;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCounters;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.bean.Stats;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.dao.StatsDAO;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.dao.WorkflowsDBDAOException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Concurrent completions of the same simulation must all be accounted,
+ * however the read-modify-write of its Stats row interleaves, and so must
+ * the completions of more simulations than the guard writes in parallel.
+ */
+public class StatsListenerConcurrencyTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(StatsListenerConcurrencyTest.class);
+    private static final int THREADS = 16;
+    private static final int JOBS = 4000;
+
+    @Test
+    public void concurrentCompletionsOfOneSimulationAreAllCounted() throws Exception {
+        complete(1, THREADS);
+    }
+
+    /**
+     * More simulations than the default stats.db.max.inflight: the writes
+     * that find every slot busy are deferred to the backlog.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {1, 4, 16})
+    public void concurrentCompletionsOfManySimulationsAreAllCounted(int threads) throws Exception {
+        complete(8, threads);
+    }
+
+    private void complete(int simulations, int threads) throws Exception {
+
+        GaswStatus[] statuses = {GaswStatus.COMPLETED, GaswStatus.ERROR, GaswStatus.STALLED, GaswStatus.CANCELLED};
+        GaswExitCode[] errorCodes = Arrays.stream(GaswExitCode.values())
+                .filter(c -> c != GaswExitCode.SUCCESS).toArray(GaswExitCode[]::new);
+        Map<String, JobTimeline> jobs = new ConcurrentHashMap<>();
+        Map<String, StatsCounters> expected = new HashMap<>();
+        for (int i = 0; i < JOBS; i++) {
+            GaswStatus status = statuses[i % statuses.length];
+            int exitCode = status == GaswStatus.COMPLETED ? 0 : errorCodes[i % errorCodes.length].getExitCode();
+            long queued = 1_000_000L * (i + 1);
+            // consecutive jobs belong to different simulations
+            String simulationID = "simulation-" + (i / statuses.length) % simulations;
+            JobTimeline job = new JobTimeline("id-" + i, "job-" + i, simulationID, "app.sh", null,
+                    status, exitCode, queued, queued + 1_000, queued + 3_000, queued + 7_000, queued + 15_000);
+            jobs.put(job.fileName(), job);
+            expected.computeIfAbsent(simulationID, k -> new StatsCounters()).record(job);
+        }
+
+        RacyStatsDAO statsDAO = new RacyStatsDAO();
+        StatsListener listener = new StatsListener();
+        listener.load(statsDAO, new MapJobDAO(jobs));
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        long elapsed;
+        try {
+            List<Future<Object>> results = new ArrayList<>();
+            int jobsPerThread = JOBS / threads;
+            for (int t = 0; t < threads; t++) {
+                int first = t * jobsPerThread;
+                results.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = first; i < first + jobsPerThread; i++) {
+                        JobTimeline job = jobs.get("job-" + i);
+                        listener.jobFinished(new GaswOutput(job.fileName() + ".jdl", exitCode(job),
+                                "", null, null, null, null, null));
+                    }
+                    return null;
+                }));
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Future<Object> result : results) {
+                result.get(1, TimeUnit.MINUTES);
+            }
+            elapsed = System.nanoTime() - begin;
+        } finally {
+            executor.shutdown();
+            // writes deferred by the guard are flushed on termination
+            listener.terminate();
+        }
+        logger.info("{} completions of {} simulations on {} threads: {} completions/s",
+                JOBS, simulations, threads, JOBS * 1_000_000_000L / Math.max(1, elapsed));
+
+        for (Map.Entry<String, StatsCounters> entry : expected.entrySet()) {
+            Stats stats = statsDAO.get(entry.getKey());
+            assertNotNull(stats, entry.getKey());
+            assertArrayEquals(slots(entry.getValue()), slots(StatsCounters.of(stats)), entry.getKey());
+        }
+    }
+
+    private static GaswExitCode exitCode(JobTimeline job) {
+
+        for (GaswExitCode code : GaswExitCode.values()) {
+            if (code.getExitCode() == job.exitCode()) {
+                return code;
+            }
+        }
+        throw new IllegalArgumentException("No GASW exit code " + job.exitCode());
+    }
+
+    private static long[] slots(StatsCounters counters) {
+
+        long[] values = new long[StatsCounters.SLOTS];
+        for (int slot = 0; slot < values.length; slot++) {
+            values[slot] = counters.get(slot);
+        }
+        return values;
+    }
+
+    /**
+     * Stores copies of the rows and yields between the read and the write
+     * of a row, like a database would, so that unserialized updates get
+     * lost.
+     */
+    private static class RacyStatsDAO implements StatsDAO {
+
+        private final Map<String, Stats> rows = new ConcurrentHashMap<>();
+
+        @Override
+        public void add(Stats stats) throws WorkflowsDBDAOException {
+
+            Thread.yield();
+            if (rows.putIfAbsent(stats.getWorkflowID(), copy(stats)) != null) {
+                throw new WorkflowsDBDAOException("Duplicate stats for " + stats.getWorkflowID());
+            }
+        }
+
+        @Override
+        public void update(Stats stats) {
+
+            Thread.yield();
+            rows.put(stats.getWorkflowID(), copy(stats));
+        }
+
+        @Override
+        public Stats get(String workflowID) {
+
+            Stats stats = rows.get(workflowID);
+            return stats != null ? copy(stats) : null;
+        }
+
+        private static Stats copy(Stats stats) {
+
+            Stats copy = new Stats(stats.getWorkflowID());
+            StatsCounters.of(stats).setTo(copy);
+            return copy;
+        }
+    }
+}
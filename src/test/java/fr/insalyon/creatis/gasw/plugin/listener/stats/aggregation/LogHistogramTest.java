@@ -0,0 +1,143 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LogHistogramTest {
+
+    @Test
+    public void smallValuesAreExact() {
+
+        for (int value = 0; value < LogHistogram.SUB_BUCKETS; value++) {
+            assertEquals(value, LogHistogram.bucket(value));
+            assertEquals(value, LogHistogram.highestValue(value));
+        }
+        assertEquals(0, LogHistogram.bucket(-5));
+    }
+
+    @Test
+    public void bucketsAreContiguous() {
+
+        assertEquals(LogHistogram.BUCKETS - 1, LogHistogram.bucket(LogHistogram.MAX_VALUE));
+        assertEquals(LogHistogram.MAX_VALUE, LogHistogram.highestValue(LogHistogram.BUCKETS - 1));
+        for (int bucket = 1; bucket < LogHistogram.BUCKETS; bucket++) {
+            long lowest = LogHistogram.highestValue(bucket - 1) + 1;
+            long highest = LogHistogram.highestValue(bucket);
+            assertEquals(bucket, LogHistogram.bucket(lowest), "lowest value of bucket " + bucket);
+            assertEquals(bucket, LogHistogram.bucket(highest), "highest value of bucket " + bucket);
+            // within 1/SUB_BUCKETS of every value of the bucket
+            assertTrue(highest - lowest <= lowest / LogHistogram.SUB_BUCKETS, "width of bucket " + bucket);
+        }
+    }
+
+    @Test
+    public void powersOfTwoStartABucket() {
+
+        assertEquals(8, LogHistogram.bucket(8));
+        assertEquals(15, LogHistogram.bucket(15));
+        assertEquals(16, LogHistogram.bucket(16));
+        assertEquals(16, LogHistogram.bucket(17));
+        assertEquals(17, LogHistogram.bucket(18));
+        assertEquals(17, LogHistogram.highestValue(16));
+    }
+
+    @Test
+    public void valuesAboveTheMaximumAreClamped() {
+
+        LogHistogram histogram = new LogHistogram();
+        histogram.record(LogHistogram.MAX_VALUE + 1);
+        histogram.record(Long.MAX_VALUE);
+
+        assertEquals(2, histogram.getCount(LogHistogram.BUCKETS - 1));
+        assertEquals(LogHistogram.MAX_VALUE, histogram.getValueAtPercentile(50));
+    }
+
+    @Test
+    public void percentilesAreTheHighestValueOfTheirBucket() {
+
+        LogHistogram histogram = new LogHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        for (int value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+
+        assertEquals(100, histogram.getTotalCount());
+        assertEquals(1, histogram.getValueAtPercentile(0));
+        assertEquals(1, histogram.getValueAtPercentile(1));
+        assertEquals(7, histogram.getValueAtPercentile(7));
+        // 50 falls in [48, 51]
+        assertEquals(51, histogram.getValueAtPercentile(50));
+        // 90 falls in [88, 95]
+        assertEquals(95, histogram.getValueAtPercentile(90));
+        // 100 falls in [96, 103]
+        assertEquals(103, histogram.getValueAtPercentile(100));
+    }
+
+    @Test
+    public void byteArrayRoundTrip() {
+
+        LogHistogram histogram = new LogHistogram();
+        histogram.record(0);
+        histogram.record(5, 3);
+        histogram.record(1_000, 1_000_000);
+        histogram.record(LogHistogram.MAX_VALUE);
+        LogHistogram other = new LogHistogram();
+        other.record(1_000);
+        histogram.merge(other);
+
+        LogHistogram copy = LogHistogram.fromByteArray(histogram.toByteArray());
+
+        assertEquals(histogram.getTotalCount(), copy.getTotalCount());
+        assertArrayEquals(counts(histogram), counts(copy));
+        assertEquals(1_000_001, copy.getCount(LogHistogram.bucket(1_000)));
+        assertEquals(0, LogHistogram.fromByteArray(new LogHistogram().toByteArray()).getTotalCount());
+        assertThrows(IllegalArgumentException.class, () -> LogHistogram.fromByteArray(new byte[] {2}));
+    }
+
+    private static long[] counts(LogHistogram histogram) {
+
+        long[] counts = new long[LogHistogram.BUCKETS];
+        for (int bucket = 0; bucket < counts.length; bucket++) {
+            counts[bucket] = histogram.getCount(bucket);
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,178 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation;
+
+import fr.insalyon.creatis.gasw.execution.GaswStatus;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static fr.insalyon.creatis.gasw.plugin.listener.stats.StatsFixtures.Q;
+import static fr.insalyon.creatis.gasw.plugin.listener.stats.StatsFixtures.job;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Records, drains and releases racing on a store smaller than the number
+ * of simulations, so that its slots are recycled all along.
+ */
+public class StatsAccumulatorStoreTest {
+
+    private static final int SIMULATIONS = 16;
+    private static final int CAPACITY = 4;
+    private static final int RECORDERS = 4;
+    private static final int DRAINERS = 2;
+    private static final int JOBS_PER_RECORDER = 50_000;
+
+    /**
+     * Each simulation has its own execution time, so that a delta drained
+     * under the wrong simulation shows in its times.
+     */
+    private static JobTimeline timeline(int simulation) {
+
+        long execution = (simulation + 1) * 1_000L;
+        return job("id", "job", simulationID(simulation), GaswStatus.COMPLETED, 0,
+                Q, Q + 1_000, Q + 2_000, Q + 2_000 + execution, Q + 3_000 + execution);
+    }
+
+    private static String simulationID(int simulation) {
+        return "simulation-" + simulation;
+    }
+
+    @Test
+    public void concurrentDrainsAndReleasesLoseNoDelta() throws Exception {
+
+        StatsAccumulatorStore store = new StatsAccumulatorStore(CAPACITY);
+        AtomicLongArray recorded = new AtomicLongArray(SIMULATIONS);
+        StatsCounters[] drained = new StatsCounters[SIMULATIONS];
+        for (int i = 0; i < SIMULATIONS; i++) {
+            drained[i] = new StatsCounters();
+        }
+        AtomicBoolean recording = new AtomicBoolean(true);
+        CountDownLatch start = new CountDownLatch(1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(RECORDERS + DRAINERS);
+        try {
+            List<Future<?>> recorders = new ArrayList<>();
+            for (int t = 0; t < RECORDERS; t++) {
+                recorders.add(executor.submit(() -> {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < JOBS_PER_RECORDER; i++) {
+                        int simulation = random.nextInt(SIMULATIONS);
+                        // a full store rejects the job, as when every slot is taken
+                        if (store.record(simulationID(simulation), timeline(simulation))) {
+                            recorded.incrementAndGet(simulation);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            List<Future<?>> drainers = new ArrayList<>();
+            for (int t = 0; t < DRAINERS; t++) {
+                drainers.add(executor.submit(() -> {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (recording.get()) {
+                        for (int simulation = 0; simulation < SIMULATIONS; simulation++) {
+                            String simulationID = simulationID(simulation);
+                            StatsCounters counters = random.nextInt(4) == 0
+                                    ? store.release(simulationID)
+                                    : store.drain(simulationID);
+                            if (counters != null) {
+                                synchronized (drained[simulation]) {
+                                    drained[simulation].add(counters);
+                                }
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> recorder : recorders) {
+                recorder.get(1, TimeUnit.MINUTES);
+            }
+            recording.set(false);
+            for (Future<?> drainer : drainers) {
+                drainer.get(1, TimeUnit.MINUTES);
+            }
+        } finally {
+            executor.shutdown();
+        }
+
+        long total = 0;
+        for (int simulation = 0; simulation < SIMULATIONS; simulation++) {
+            StatsCounters counters = store.release(simulationID(simulation));
+            if (counters != null) {
+                drained[simulation].add(counters);
+            }
+            long count = recorded.get(simulation);
+            total += count;
+            String simulationID = simulationID(simulation);
+            assertEquals(count, drained[simulation].getCount(StatsCategory.COMPLETED), simulationID);
+            assertEquals(count * (simulation + 1), drained[simulation].getTime(StatsCategory.COMPLETED,
+                    StatsPhase.EXECUTION), simulationID);
+            assertEquals(count, drained[simulation].getTime(StatsCategory.COMPLETED, StatsPhase.WAITING),
+                    simulationID);
+        }
+        assertTrue(total > 0);
+        assertEquals(0, store.size());
+    }
+
+    @Test
+    public void releasedSlotIsReused() {
+
+        StatsAccumulatorStore store = new StatsAccumulatorStore(1);
+        assertTrue(store.record(simulationID(0), timeline(0)));
+        assertTrue(!store.record(simulationID(1), timeline(1)));
+
+        assertEquals(1, store.release(simulationID(0)).getCount(StatsCategory.COMPLETED));
+        assertTrue(store.record(simulationID(1), timeline(1)));
+        assertNull(store.get(simulationID(0)));
+        assertEquals(2, store.drain(simulationID(1)).getTime(StatsCategory.COMPLETED, StatsPhase.EXECUTION));
+    }
+}
@@ -0,0 +1,234 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation;
+
+import fr.insalyon.creatis.gasw.execution.GaswStatus;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static fr.insalyon.creatis.gasw.plugin.listener.stats.StatsFixtures.NONE;
+import static fr.insalyon.creatis.gasw.plugin.listener.stats.StatsFixtures.Q;
+import static fr.insalyon.creatis.gasw.plugin.listener.stats.StatsFixtures.job;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Checks the classifier and the counters against the parseStatus method
+ * they replaced, reproduced below as the reference.
+ */
+public class StatsCategoryTest {
+
+    @ParameterizedTest
+    @CsvSource({
+        "COMPLETED, 0, COMPLETED",
+        "COMPLETED, 1, ",
+        "COMPLETED, -1, ",
+        "CANCELLED, 0, CANCELLED",
+        "CANCELLED, 9, CANCELLED",
+        "DELETED, 0, CANCELLED",
+        "STALLED, 10, FAILED_STALLED",
+        "ERROR, 0, ",
+        "ERROR, 1, ",
+        "ERROR, 2, FAILED_INPUT",
+        "ERROR, 3, FAILED_OUTPUT",
+        "ERROR, 4, FAILED_INPUT",
+        "ERROR, 5, FAILED_APPLICATION",
+        "ERROR, 6, FAILED_INPUT",
+        "ERROR, 7, ",
+        "ERROR, 9, ",
+        "ERROR, 10, ",
+        "ERROR, 201, FAILED_INPUT",
+        "ERROR, 302, FAILED_OUTPUT",
+        "ERROR, 404, FAILED_INPUT",
+        "ERROR, 503, FAILED_APPLICATION",
+        "ERROR, 601, FAILED_INPUT",
+        "ERROR, -2, FAILED_INPUT",
+        "ERROR, -503, FAILED_APPLICATION",
+        "ERROR, 2147483647, FAILED_INPUT",
+        "ERROR, -2147483647, FAILED_INPUT",
+        "RUNNING, 0, ",
+        "QUEUED, 0, ",
+        "ERROR_HELD, 5, ",
+        "STALLED_HELD, 0, "
+    })
+    public void classifiesAsTheFormerParser(GaswStatus status, int exitCode, StatsCategory expected) {
+
+        assertEquals(expected, StatsCategory.classify(status, exitCode));
+        assertEquals(expected, formerCategory(status, exitCode));
+    }
+
+    @Test
+    public void classifiesEveryStatusAndExitCodeAsTheFormerParser() {
+
+        for (GaswStatus status : GaswStatus.values()) {
+            for (int exitCode = -100_000; exitCode <= 100_000; exitCode++) {
+                assertEquals(formerCategory(status, exitCode), StatsCategory.classify(status, exitCode),
+                        status + " " + exitCode);
+            }
+        }
+    }
+
+    @Test
+    public void minValueExitCodeIsNotAccounted() {
+
+        assertThrows(NumberFormatException.class, () -> formerCategory(GaswStatus.ERROR, Integer.MIN_VALUE));
+        assertNull(StatsCategory.classify(GaswStatus.ERROR, Integer.MIN_VALUE));
+    }
+
+    @Test
+    public void countsAsTheFormerParser() {
+
+        // phase starts and end, as offsets from Q, of complete and partial timelines
+        long[][] shapes = {
+            {0, 10_500, 30_999, 91_000, 95_001},
+            {0, 10_000, NONE, NONE, 40_000},
+            {0, 10_000, 20_000, NONE, 70_000},
+            {0, NONE, NONE, NONE, 5_000},
+            {0, 1, 2, 3, 4}
+        };
+        GaswStatus[] statuses = {GaswStatus.COMPLETED, GaswStatus.CANCELLED, GaswStatus.DELETED,
+            GaswStatus.STALLED, GaswStatus.ERROR};
+        int[] exitCodes = {0, 1, 2, 3, 4, 5, 6, 7, 302, -503};
+
+        for (GaswStatus status : statuses) {
+            for (int exitCode : exitCodes) {
+                for (long[] shape : shapes) {
+                    JobTimeline job = job("id", "job", "simulation", status, exitCode,
+                            Q + shape[0], at(shape[1]), at(shape[2]), at(shape[3]), Q + shape[4]);
+                    long[] expected = formerCounters(job);
+                    if (expected == null) {
+                        // the former parser failed on this job and wrote nothing
+                        assertNull(StatsCounters.classify(job), job.toString());
+                        continue;
+                    }
+                    StatsCounters counters = new StatsCounters();
+                    counters.record(job);
+                    long[] actual = new long[StatsCounters.SLOTS];
+                    for (int slot = 0; slot < actual.length; slot++) {
+                        actual[slot] = counters.get(slot);
+                    }
+                    assertArrayEquals(expected, actual, job.toString());
+                }
+            }
+        }
+    }
+
+    private static long at(long offset) {
+        return offset == NONE ? NONE : Q + offset;
+    }
+
+    /**
+     * Category chosen by the former parseStatus switch.
+     */
+    private static StatsCategory formerCategory(GaswStatus status, int exitCode) {
+
+        switch (status) {
+            case COMPLETED:
+                return exitCode == 0 ? StatsCategory.COMPLETED : null;
+            case CANCELLED:
+            case DELETED:
+                return StatsCategory.CANCELLED;
+            case STALLED:
+                return StatsCategory.FAILED_STALLED;
+            case ERROR:
+                Integer gaswExitCode = exitCode;
+                if (gaswExitCode < 0) {
+                    gaswExitCode = -gaswExitCode;
+                }
+                int firstDigit = Integer.parseInt(gaswExitCode.toString().substring(0, 1));
+                switch (firstDigit) {
+                    case 2, 4, 6:
+                        return StatsCategory.FAILED_INPUT;
+                    case 3:
+                        return StatsCategory.FAILED_OUTPUT;
+                    case 5:
+                        return StatsCategory.FAILED_APPLICATION;
+                    default:
+                        return null;
+                }
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Counters the former parseStatus added for a job, or null where it
+     * failed with a NullPointerException.
+     */
+    private static long[] formerCounters(JobTimeline job) {
+
+        long[] values = new long[StatsCounters.SLOTS];
+        StatsCategory category = formerCategory(job.status(), job.exitCode());
+        if (category == null) {
+            return values;
+        }
+        int slot = StatsCounters.countSlot(category);
+        long[] starts = {job.queued(), job.download(), job.running(), job.upload()};
+        List<Long> times = new ArrayList<>();
+        if (category == StatsCategory.COMPLETED) {
+            for (int phase = 0; phase < starts.length; phase++) {
+                long next = phase < starts.length - 1 ? starts[phase + 1] : job.end();
+                if (starts[phase] == NONE || next == NONE) {
+                    return null;
+                }
+                times.add((next - starts[phase]) / 1000);
+            }
+        } else {
+            for (int phase = 0; phase < starts.length; phase++) {
+                if (starts[phase] == NONE) {
+                    times.add(0L);
+                    continue;
+                }
+                long next = phase < starts.length - 1 ? starts[phase + 1] : NONE;
+                long until = next != NONE ? next : job.end();
+                if (until == NONE) {
+                    return null;
+                }
+                times.add((until - starts[phase]) / 1000);
+            }
+        }
+        values[slot] = 1;
+        for (int phase = 0; phase < times.size(); phase++) {
+            values[slot + 1 + phase] = times.get(phase);
+        }
+        return values;
+    }
+}
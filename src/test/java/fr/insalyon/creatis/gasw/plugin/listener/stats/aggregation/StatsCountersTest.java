@@ -0,0 +1,102 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation;
+
+import fr.insalyon.creatis.gasw.execution.GaswStatus;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
+import org.junit.jupiter.api.Test;
+
+import static fr.insalyon.creatis.gasw.plugin.listener.stats.StatsFixtures.NONE;
+import static fr.insalyon.creatis.gasw.plugin.listener.stats.StatsFixtures.Q;
+import static fr.insalyon.creatis.gasw.plugin.listener.stats.StatsFixtures.job;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StatsCountersTest {
+
+    @Test
+    public void completedJobIsAccountedPerPhase() {
+
+        StatsCounters counters = new StatsCounters();
+        assertEquals(StatsCategory.COMPLETED, counters.record(job(GaswStatus.COMPLETED, 0,
+                Q + 10_000, Q + 30_000, Q + 90_000, Q + 95_500)));
+
+        assertEquals(1, counters.getCount(StatsCategory.COMPLETED));
+        assertEquals(10, counters.getTime(StatsCategory.COMPLETED, StatsPhase.WAITING));
+        assertEquals(20, counters.getTime(StatsCategory.COMPLETED, StatsPhase.INPUT));
+        assertEquals(60, counters.getTime(StatsCategory.COMPLETED, StatsPhase.EXECUTION));
+        assertEquals(5, counters.getTime(StatsCategory.COMPLETED, StatsPhase.OUTPUT));
+    }
+
+    @Test
+    public void completedJobWithoutPhaseDateIsNotAccounted() {
+
+        JobTimeline[] jobs = {
+            job(GaswStatus.COMPLETED, 0, NONE, Q + 30_000, Q + 90_000, Q + 95_000),
+            job(GaswStatus.COMPLETED, 0, Q + 10_000, NONE, Q + 90_000, Q + 95_000),
+            job(GaswStatus.COMPLETED, 0, Q + 10_000, Q + 30_000, NONE, Q + 95_000),
+            job(GaswStatus.COMPLETED, 0, Q + 10_000, Q + 30_000, Q + 90_000, NONE)
+        };
+        StatsCounters counters = new StatsCounters();
+        for (JobTimeline job : jobs) {
+            assertNull(StatsCounters.classify(job));
+            assertNull(counters.record(job));
+        }
+        assertTrue(counters.isEmpty());
+    }
+
+    @Test
+    public void partialJobIsAccountedUpToItsEnd() {
+
+        StatsCounters counters = new StatsCounters();
+        // stalled while downloading its inputs
+        assertEquals(StatsCategory.FAILED_STALLED, counters.record(job(GaswStatus.STALLED, 0,
+                Q + 10_000, NONE, NONE, Q + 40_000)));
+
+        assertEquals(1, counters.getCount(StatsCategory.FAILED_STALLED));
+        assertEquals(10, counters.getTime(StatsCategory.FAILED_STALLED, StatsPhase.WAITING));
+        assertEquals(30, counters.getTime(StatsCategory.FAILED_STALLED, StatsPhase.INPUT));
+        assertEquals(0, counters.getTime(StatsCategory.FAILED_STALLED, StatsPhase.EXECUTION));
+        assertEquals(0, counters.getTime(StatsCategory.FAILED_STALLED, StatsPhase.OUTPUT));
+    }
+
+    @Test
+    public void partialJobWithoutEndIsNotAccounted() {
+
+        StatsCounters counters = new StatsCounters();
+        assertNull(counters.record(job(GaswStatus.CANCELLED, 0, Q + 10_000, NONE, NONE, NONE)));
+        assertTrue(counters.isEmpty());
+    }
+}
@@ -0,0 +1,80 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.export;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static fr.insalyon.creatis.gasw.plugin.listener.stats.StatsFixtures.Q;
+import static fr.insalyon.creatis.gasw.plugin.listener.stats.StatsFixtures.completed;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class JobRecordSinkTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void recordsAreReadBackWithTheirJobAndTruncation() throws IOException {
+
+        String longID = "simulation-".repeat(10);
+        try (JobRecordSink sink = new JobRecordSink(directory, 1 << 20, 16, 1000)) {
+            sink.start();
+            sink.offer(completed("job-1", "job-1.sh", "simulation-1"));
+            sink.offer(completed("job-2", "job-2.sh", longID));
+        }
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.toList();
+        }
+        assertEquals(1, files.size());
+        StringWriter out = new StringWriter();
+        assertEquals(2, JobRecordReader.toCsv(files.get(0), out));
+
+        String[] lines = out.toString().split("\n");
+        assertEquals("job-1,job-1.sh,simulation-1,app,site-1,COMPLETED,COMPLETED,0," + (Q + 4_000)
+                + ",1,1,1,1,false", lines[0]);
+        assertEquals("job-2,job-2.sh," + longID.substring(0, JobRecordFormat.STRING_SIZE)
+                + ",app,site-1,COMPLETED,COMPLETED,0," + (Q + 4_000) + ",1,1,1,1,true", lines[1]);
+        assertEquals(JobRecordReader.csvHeader().split(",").length, lines[0].split(",").length);
+    }
+}
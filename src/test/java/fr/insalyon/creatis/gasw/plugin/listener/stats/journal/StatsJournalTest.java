@@ -0,0 +1,171 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.journal;
+
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsAccumulatorStore;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCategory;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCounters;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static fr.insalyon.creatis.gasw.plugin.listener.stats.StatsFixtures.completed;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class StatsJournalTest {
+
+    @TempDir
+    Path directory;
+
+    private static StatsCounters counters(String simulationID) {
+
+        StatsCounters counters = new StatsCounters();
+        counters.record(completed("id", "job", simulationID));
+        return counters;
+    }
+
+    private static int replay(Path file, StatsAccumulatorStore store) throws IOException {
+
+        try (StatsJournal journal = StatsJournal.open(file, 64 * 1024)) {
+            return journal.replay(store, new ArrayList<>());
+        }
+    }
+
+    @Test
+    public void longSimulationIDsAreReplayed() throws IOException {
+
+        Path file = directory.resolve("journal");
+        String shortID = "simulation-1";
+        String longID = "simulation-".repeat(20);
+        try (StatsJournal journal = StatsJournal.open(file, 64 * 1024)) {
+            assertEquals(StatsJournal.Append.APPENDED, journal.append(longID, counters(longID)));
+            assertEquals(StatsJournal.Append.APPENDED, journal.append(shortID, counters(shortID)));
+            assertEquals(StatsJournal.Append.APPENDED, journal.append(longID, counters(longID)));
+        }
+
+        StatsAccumulatorStore store = new StatsAccumulatorStore(16);
+        assertEquals(3, replay(file, store));
+        assertEquals(2, store.get(longID).getCount(StatsCategory.COMPLETED));
+        assertEquals(1, store.get(shortID).getCount(StatsCategory.COMPLETED));
+    }
+
+    @Test
+    public void tooLongSimulationIDIsSkippedNotFull() throws IOException {
+
+        String tooLong = "x".repeat(2000);
+        try (StatsJournal journal = StatsJournal.open(directory.resolve("journal"), 64 * 1024)) {
+            assertEquals(StatsJournal.Append.SKIPPED, journal.append(tooLong, counters(tooLong)));
+            assertEquals(StatsJournal.Append.APPENDED, journal.append("simulation-1", counters("simulation-1")));
+        }
+    }
+
+    @Test
+    public void fullJournalIsReported() throws IOException {
+
+        // header, the simulation ID and three deltas
+        try (StatsJournal journal = StatsJournal.open(directory.resolve("journal"), 64 + 4 * 64)) {
+            assertEquals(StatsJournal.Append.APPENDED, journal.append("simulation-1", counters("simulation-1")));
+            assertEquals(StatsJournal.Append.APPENDED, journal.append("simulation-1", counters("simulation-1")));
+            assertEquals(StatsJournal.Append.FULL, journal.append("simulation-2", counters("simulation-2")));
+            assertEquals(StatsJournal.Append.APPENDED, journal.append("simulation-1", counters("simulation-1")));
+            assertEquals(StatsJournal.Append.FULL, journal.append("simulation-1", counters("simulation-1")));
+        }
+    }
+
+    @Test
+    public void truncatedJournalReplaysNothing() throws IOException {
+
+        Path file = directory.resolve("journal");
+        String longID = "simulation-".repeat(20);
+        try (StatsJournal journal = StatsJournal.open(file, 64 * 1024)) {
+            journal.append(longID, counters(longID));
+            journal.truncate();
+        }
+        StatsAccumulatorStore store = new StatsAccumulatorStore(16);
+        assertEquals(0, replay(file, store));
+        assertNull(store.get(longID));
+    }
+
+    @Test
+    public void pendingJobsPastTheWatermarkAreReplayed() throws IOException {
+
+        Path file = directory.resolve("journal");
+        String longJobID = "job-".repeat(40) + ".jdl";
+        try (StatsJournal journal = StatsJournal.open(file, 64 * 1024)) {
+            journal.appendPending(1, "job-1.jdl", 0);
+            journal.appendPending(2, "job-2.jdl", 6);
+            journal.truncate();
+            // job 2 was still queued, job 3 was enqueued during the flush
+            journal.appendPending(3, "job-3.jdl", 0);
+            journal.appendWatermark(1);
+            journal.appendPending(2, "job-2.jdl", 6);
+            journal.appendPending(3, "job-3.jdl", 0);
+            journal.append("simulation-1", counters("simulation-1"));
+            journal.appendPending(4, longJobID, 1);
+        }
+
+        StatsAccumulatorStore store = new StatsAccumulatorStore(16);
+        List<StatsJournal.PendingJob> pending = new ArrayList<>();
+        try (StatsJournal journal = StatsJournal.open(file, 64 * 1024)) {
+            assertEquals(1, journal.replay(store, pending));
+            assertEquals(4, journal.getLastID());
+        }
+        assertEquals(List.of(new StatsJournal.PendingJob(3, "job-3.jdl", 0),
+                new StatsJournal.PendingJob(2, "job-2.jdl", 6),
+                new StatsJournal.PendingJob(4, longJobID, 1)), pending);
+        assertEquals(1, store.get("simulation-1").getCount(StatsCategory.COMPLETED));
+    }
+
+    @Test
+    public void processedPendingJobsAreNotReplayed() throws IOException {
+
+        Path file = directory.resolve("journal");
+        try (StatsJournal journal = StatsJournal.open(file, 64 * 1024)) {
+            journal.appendPending(1, "job-1.jdl", 0);
+            journal.appendPending(2, "job-2.jdl", 0);
+            journal.appendWatermark(2);
+        }
+        List<StatsJournal.PendingJob> pending = new ArrayList<>();
+        try (StatsJournal journal = StatsJournal.open(file, 64 * 1024)) {
+            journal.replay(new StatsAccumulatorStore(16), pending);
+            assertEquals(2, journal.getLastID());
+        }
+        assertEquals(List.of(), pending);
+    }
+}
@@ -0,0 +1,86 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.monitoring;
+
+import fr.insalyon.creatis.gasw.execution.GaswStatus;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.bean.JobTimeline;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static fr.insalyon.creatis.gasw.plugin.listener.stats.StatsFixtures.NONE;
+import static fr.insalyon.creatis.gasw.plugin.listener.stats.StatsFixtures.Q;
+import static fr.insalyon.creatis.gasw.plugin.listener.stats.StatsFixtures.job;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class StragglerDetectorTest {
+
+    private static JobTimeline completed(int i) {
+        return job("done-" + i, "file-" + i, "simulation-1", GaswStatus.COMPLETED, 0,
+                Q, Q + 1_000, Q + 2_000, Q + 12_000, Q + 13_000);
+    }
+
+    private static JobTimeline running(String id) {
+        return job(id, "file", "simulation-1", GaswStatus.RUNNING, 0, Q, Q + 1_000, Q + 2_000, NONE, NONE);
+    }
+
+    private static StragglerDetector detector() {
+
+        StragglerDetector detector = new StragglerDetector(new StatsListenerMetrics(false), 99, 20, 100);
+        for (int i = 0; i < 20; i++) {
+            detector.record(completed(i));
+        }
+        return detector;
+    }
+
+    @Test
+    public void stragglerIsReportedOnce() {
+
+        StragglerDetector detector = detector();
+        long now = Q + 200_000;
+        assertEquals(1, detector.scan(List.of(running("slow")), now));
+        assertEquals(0, detector.scan(List.of(running("slow")), now + 1_000));
+    }
+
+    @Test
+    public void stragglerThatLeftIsForgotten() {
+
+        StragglerDetector detector = detector();
+        long now = Q + 200_000;
+        assertEquals(1, detector.scan(List.of(running("slow")), now));
+        // evicted from the timelines without being recorded
+        assertEquals(0, detector.scan(List.of(), now + 1_000));
+        assertEquals(1, detector.scan(List.of(running("slow")), now + 2_000));
+    }
+}
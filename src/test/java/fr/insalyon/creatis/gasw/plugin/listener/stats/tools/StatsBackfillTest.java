@@ -0,0 +1,104 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.tools;
+
+import fr.insalyon.creatis.gasw.bean.Job;
+import fr.insalyon.creatis.gasw.dao.DAOException;
+import fr.insalyon.creatis.gasw.execution.GaswStatus;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.H2JobDatabase;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCategory;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCounters;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsPhase;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.dao.hibernate.StatsJobData;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static fr.insalyon.creatis.gasw.plugin.listener.stats.StatsFixtures.Q;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * The backfill must account the jobs as the listener does: a file retried
+ * with the same exit code only counts its last attempt.
+ */
+public class StatsBackfillTest {
+
+    private static final String SIMULATION_ID = "simulation-1";
+
+    private SessionFactory sessionFactory;
+
+    @BeforeEach
+    public void setUp() {
+
+        sessionFactory = H2JobDatabase.create("backfill");
+        H2JobDatabase.insert(sessionFactory, List.of(
+                // failed twice with the same exit code, then completed
+                job("file-1-0", "file-1", GaswStatus.ERROR, 50, Q, Q + 5_000, Q + 10_000, 0, Q + 20_000),
+                job("file-1-1", "file-1", GaswStatus.ERROR, 50, Q + 30_000, Q + 35_000, Q + 40_000, 0, Q + 65_000),
+                job("file-1-2", "file-1", GaswStatus.COMPLETED, 0,
+                        Q + 70_000, Q + 75_000, Q + 80_000, Q + 90_000, Q + 95_000),
+                // resubmitted and still running: the finished attempt counts
+                job("file-2-0", "file-2", GaswStatus.STALLED, 0, Q, Q + 5_000, Q + 10_000, 0, Q + 20_000),
+                job("file-2-1", "file-2", GaswStatus.RUNNING, 0, Q + 30_000, Q + 35_000, Q + 40_000, 0, 0),
+                job("file-3-0", "file-3", GaswStatus.COMPLETED, 0, Q, Q + 1_000, Q + 2_000, Q + 3_000, Q + 4_000)));
+    }
+
+    @AfterEach
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    private static Job job(String id, String fileName, GaswStatus status, int exitCode,
+            long queued, long download, long running, long upload, long end) {
+        return H2JobDatabase.newJob(id, SIMULATION_ID, fileName, "app", status, exitCode,
+                queued, download, running, upload, end);
+    }
+
+    @Test
+    public void retriedFileCountsItsLastAttemptOnly() throws DAOException {
+
+        StatsBackfill backfill = new StatsBackfill(new StatsJobData(sessionFactory), null, 2, 2);
+        Map<String, StatsCounters> totals = backfill.aggregate(List.of(SIMULATION_ID));
+
+        StatsCounters counters = totals.get(SIMULATION_ID);
+        assertEquals(2, counters.getCount(StatsCategory.COMPLETED));
+        assertEquals(1, counters.getCount(StatsCategory.FAILED_APPLICATION));
+        assertEquals(25, counters.getTime(StatsCategory.FAILED_APPLICATION, StatsPhase.EXECUTION));
+        assertEquals(1, counters.getCount(StatsCategory.FAILED_STALLED));
+    }
+}
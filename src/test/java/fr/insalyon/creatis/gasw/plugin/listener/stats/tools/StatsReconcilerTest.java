@@ -0,0 +1,188 @@
+/* Copyright CNRS-CREATIS
+ *
+ * Rafael Ferreira da Silva
+ * rafael.silva@creatis.insa-lyon.fr
+ * http://www.rafaelsilva.com
+ *
+ * This software is governed by the CeCILL  license under French law and
+ * abiding by the rules of distribution of free software.  You can  use,
+ * modify and/ or redistribute the software under the terms of the CeCILL
+ * license as circulated by CEA, CNRS and INRIA at the following URL
+ * "http://www.cecill.info".
+ *
+ * As a counterpart to the access to the source code and  rights to copy,
+ * modify and redistribute granted by the license, users are provided only
+ * with a limited warranty  and the software's author,  the holder of the
+ * economic rights,  and the successive licensors  have only  limited
+ * liability.
+ *
+ * In this respect, the user's attention is drawn to the risks associated
+ * with loading,  using,  modifying and/or developing or reproducing the
+ * software by the user in light of its specific status of free software,
+ * that may mean  that it is complicated to manipulate,  and  that  also
+ * therefore means  that it is reserved for developers  and  experienced
+ * professionals having in-depth computer knowledge. Users are therefore
+ * encouraged to load and test the software's suitability as regards their
+ * requirements in conditions enabling the security of their systems and/or
+ * data to be ensured and,  more generally, to use and operate it in the
+ * same conditions as regards security.
+ *
+ * The fact that you are presently reading this means that you have had
+ * knowledge of the CeCILL license and that you accept its terms.
+ */
+
+
+package fr.insalyon.creatis.gasw.plugin.listener.stats.tools;
+
+import fr.insalyon.creatis.gasw.bean.Job;
+import fr.insalyon.creatis.gasw.dao.DAOException;
+import fr.insalyon.creatis.gasw.execution.GaswStatus;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.H2JobDatabase;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCategory;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsCounters;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.aggregation.StatsPhase;
+import fr.insalyon.creatis.gasw.plugin.listener.stats.dao.hibernate.StatsJobData;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.bean.Stats;
+import fr.insalyon.creatis.moteur.plugins.workflowsdb.dao.StatsDAO;
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static fr.insalyon.creatis.gasw.plugin.listener.stats.StatsFixtures.Q;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The reconciler must account the jobs as the listener does, and only
+ * repair the rows whose counts differ.
+ */
+public class StatsReconcilerTest {
+
+    private SessionFactory sessionFactory;
+    private StatsJobData jobDAO;
+    private MapStatsDAO statsDAO;
+
+    @BeforeEach
+    public void setUp() {
+
+        sessionFactory = H2JobDatabase.create("reconciler");
+        List<Job> jobs = new ArrayList<>();
+        for (String simulationID : List.of("exact", "rounded", "duplicated", "slow")) {
+            // failed twice with the same exit code, then completed
+            jobs.add(job(simulationID, 0, GaswStatus.ERROR, 50, Q, Q + 5_000, Q + 10_000, 0, Q + 20_000));
+            jobs.add(job(simulationID, 1, GaswStatus.ERROR, 50, Q + 30_000, Q + 35_000, Q + 40_000, 0, Q + 65_000));
+            jobs.add(job(simulationID, 2, GaswStatus.COMPLETED, 0,
+                    Q + 70_000, Q + 75_000, Q + 80_000, Q + 90_000, Q + 95_000));
+        }
+        H2JobDatabase.insert(sessionFactory, jobs);
+        jobDAO = new StatsJobData(sessionFactory);
+        statsDAO = new MapStatsDAO();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        sessionFactory.close();
+    }
+
+    private static Job job(String simulationID, int attempt, GaswStatus status, int exitCode,
+            long queued, long download, long running, long upload, long end) {
+        return H2JobDatabase.newJob(simulationID + "-" + attempt, simulationID, simulationID + "-file",
+                "app", status, exitCode, queued, download, running, upload, end);
+    }
+
+    private void store(String simulationID, StatsCounters counters) {
+
+        Stats stats = new Stats(simulationID);
+        counters.setTo(stats);
+        statsDAO.rows.put(simulationID, stats);
+    }
+
+    @Test
+    public void retriedFileCountsItsLastAttemptOnly() throws DAOException {
+
+        StatsCounters counters = jobDAO.aggregateFinished("exact");
+
+        assertEquals(1, counters.getCount(StatsCategory.COMPLETED));
+        assertEquals(10, counters.getTime(StatsCategory.COMPLETED, StatsPhase.EXECUTION));
+        assertEquals(1, counters.getCount(StatsCategory.FAILED_APPLICATION));
+        assertEquals(25, counters.getTime(StatsCategory.FAILED_APPLICATION, StatsPhase.EXECUTION));
+    }
+
+    @Test
+    public void onlyRowsWithDifferentCountsAreRepaired() throws DAOException {
+
+        store("exact", jobDAO.aggregateFinished("exact"));
+
+        // rounded by a second: not a drift
+        StatsCounters rounded = jobDAO.aggregateFinished("rounded");
+        rounded.add(StatsCounters.timeSlot(StatsCategory.COMPLETED, StatsPhase.EXECUTION), 1);
+        store("rounded", rounded);
+
+        // the first attempt accounted too, with a rounded completed job
+        StatsCounters duplicated = jobDAO.aggregateFinished("duplicated");
+        duplicated.add(StatsCounters.countSlot(StatsCategory.FAILED_APPLICATION), 1);
+        duplicated.add(StatsCounters.timeSlot(StatsCategory.FAILED_APPLICATION, StatsPhase.EXECUTION), 10);
+        duplicated.add(StatsCounters.timeSlot(StatsCategory.COMPLETED, StatsPhase.EXECUTION), 1);
+        store("duplicated", duplicated);
+
+        // times drifted with the right counts: reported only
+        StatsCounters slow = jobDAO.aggregateFinished("slow");
+        slow.add(StatsCounters.timeSlot(StatsCategory.COMPLETED, StatsPhase.EXECUTION), 5);
+        store("slow", slow);
+
+        StatsReconciler reconciler = new StatsReconciler(jobDAO, statsDAO, 2, true);
+        List<StatsReconciler.Drift> drifts = reconciler.reconcile(List.of("exact", "rounded", "duplicated", "slow"));
+
+        Set<String> drifted = new HashSet<>();
+        drifts.forEach(drift -> drifted.add(drift.simulationID()));
+        assertEquals(Set.of("duplicated", "slow"), drifted);
+        assertEquals(Set.of("duplicated"), statsDAO.updated);
+
+        StatsCounters repaired = StatsCounters.of(statsDAO.rows.get("duplicated"));
+        assertEquals(1, repaired.getCount(StatsCategory.FAILED_APPLICATION));
+        assertEquals(25, repaired.getTime(StatsCategory.FAILED_APPLICATION, StatsPhase.EXECUTION));
+        assertEquals(11, repaired.getTime(StatsCategory.COMPLETED, StatsPhase.EXECUTION));
+        assertEquals(15, StatsCounters.of(statsDAO.rows.get("slow")).getTime(StatsCategory.COMPLETED,
+                StatsPhase.EXECUTION));
+    }
+
+    @Test
+    public void missingRowIsAdded() throws DAOException {
+
+        StatsReconciler reconciler = new StatsReconciler(jobDAO, statsDAO, 1, true);
+        assertEquals(1, reconciler.reconcile(List.of("exact")).size());
+
+        assertTrue(statsDAO.updated.isEmpty());
+        assertEquals(1, StatsCounters.of(statsDAO.rows.get("exact")).getCount(StatsCategory.COMPLETED));
+    }
+
+    private static class MapStatsDAO implements StatsDAO {
+
+        private final Map<String, Stats> rows = new ConcurrentHashMap<>();
+        private final Set<String> updated = ConcurrentHashMap.newKeySet();
+
+        @Override
+        public void add(Stats stats) {
+            rows.put(stats.getWorkflowID(), stats);
+        }
+
+        @Override
+        public void update(Stats stats) {
+            rows.put(stats.getWorkflowID(), stats);
+            updated.add(stats.getWorkflowID());
+        }
+
+        @Override
+        public Stats get(String simulationID) {
+            return rows.get(simulationID);
+        }
+    }
+}